@@ -0,0 +1,133 @@
+package ch.epfl.dedis.benchmarks;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.eventlog.Event;
+import ch.epfl.dedis.lib.eventlog.SearchResponse;
+import ch.epfl.dedis.lib.omniledger.ClientTransaction;
+import ch.epfl.dedis.lib.omniledger.InstanceId;
+import ch.epfl.dedis.lib.omniledger.OmniledgerRPC;
+import ch.epfl.dedis.lib.omniledger.Proof;
+import ch.epfl.dedis.lib.omniledger.SubId;
+import ch.epfl.dedis.lib.omniledger.contracts.EventLogInstance;
+import ch.epfl.dedis.lib.omniledger.darc.Darc;
+import ch.epfl.dedis.lib.omniledger.darc.Signer;
+import ch.epfl.dedis.lib.omniledger.darc.SignerEd25519;
+import ch.epfl.dedis.lib.skipchain.SkipchainRPC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end requests of the client against a LocalConode, including the websocket, the
+ * serialization and the verification of the replies. The throughput is given in requests per
+ * second, the sample time mode gives the percentiles of the latency, e.g. p0.99.
+ * <p>
+ * The port of the stand-in can be changed with -Dconode.port, it listens on the port + 1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ConodeBenchmark {
+    // more instances than the proof cache of OmniledgerRPC holds, so that every proof is fetched
+    private static final int instances = 4096;
+    private static final int events = 1000;
+
+    private LocalConode conode;
+    private OmniledgerRPC ol;
+    private SkipchainRPC skipchain;
+    private EventLogInstance eventLog;
+    private List<Signer> signers;
+    private List<InstanceId> ids;
+    private ClientTransaction transaction;
+
+    /**
+     * Every thread walks through the instances on its own.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        conode = LocalConode.start(Integer.getInteger("conode.port", 17002));
+        signers = Collections.singletonList(new SignerEd25519());
+        Darc darc = Fixtures.darc(signers.get(0));
+        ol = new OmniledgerRPC(conode.getRoster(), darc, Duration.ofSeconds(1));
+
+        ids = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            InstanceId id = new InstanceId(darc.getBaseId(), SubId.random());
+            conode.putInstance(id, new byte[0], "eventlog");
+            ids.add(id);
+        }
+        eventLog = new EventLogInstance(ol, ids.get(0));
+        skipchain = new SkipchainRPC(conode.getRoster(), ol.getGenesis().getId());
+        transaction = Fixtures.transaction(10, signers);
+    }
+
+    /**
+     * The stand-in keeps the events logged by logEvent, so the log is reset before every
+     * iteration, else it grows without bounds over a run.
+     */
+    @Setup(Level.Iteration)
+    public void resetEvents() {
+        conode.clearEvents();
+        for (int i = 0; i < events; i++) {
+            conode.addEvent(Fixtures.event(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        conode.close();
+    }
+
+    @Benchmark
+    public Proof getProof(Cursor c) throws Exception {
+        c.next = (c.next + 1) % instances;
+        return ol.getProof(ids.get(c.next));
+    }
+
+    @Benchmark
+    public ClientTransaction sendTransaction() throws Exception {
+        ol.sendTransaction(transaction);
+        return transaction;
+    }
+
+    @Benchmark
+    public InstanceId logEvent() throws Exception {
+        return eventLog.log(new Event(events, "log", "benchmark"), signers);
+    }
+
+    @Benchmark
+    public SearchResponse search() throws Exception {
+        // a range of about 10 events, which is not truncated
+        return eventLog.search("", 100L * 1000 * 1000, 110L * 1000 * 1000);
+    }
+
+    @Benchmark
+    public SkipBlock getLatestSkipblock() throws Exception {
+        return skipchain.getLatestSkipblock();
+    }
+}
@@ -0,0 +1,141 @@
+package ch.epfl.dedis.benchmarks;
+
+import ch.epfl.dedis.lib.crypto.Ed25519Point;
+import ch.epfl.dedis.lib.crypto.Encryption;
+import ch.epfl.dedis.lib.crypto.KeyPair;
+import ch.epfl.dedis.lib.crypto.Point;
+import ch.epfl.dedis.lib.crypto.Scalar;
+import ch.epfl.dedis.lib.crypto.SchnorrSig;
+import ch.epfl.dedis.lib.crypto.StreamEncryption;
+import ch.epfl.dedis.lib.omniledger.darc.Darc;
+import ch.epfl.dedis.lib.omniledger.darc.DarcId;
+import ch.epfl.dedis.lib.omniledger.darc.SignerEd25519;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The elliptic curve operations, the signatures, the darcs and the symmetric encryption.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+    // how many signatures are verified at once by verifyBatch
+    private static final int batch = 64;
+    // the size of the data to encrypt, 1MB
+    private static final int dataLength = 1 << 20;
+
+    private KeyPair kp;
+    private Scalar scalar;
+    private byte[] msg;
+    private SchnorrSig sig;
+    private List<byte[]> msgs;
+    private List<Point> pubs;
+    private List<SchnorrSig> sigs;
+    private Darc darc;
+    private byte[] keyMaterial;
+    private byte[] data;
+    private byte[] dataEnc;
+
+    @Setup
+    public void setup() throws Exception {
+        kp = new KeyPair();
+        scalar = new KeyPair().scalar;
+        msg = "benchmark".getBytes();
+        sig = new SchnorrSig(msg, kp.scalar);
+        msgs = new ArrayList<>();
+        pubs = new ArrayList<>();
+        sigs = new ArrayList<>();
+        for (int i = 0; i < batch; i++) {
+            KeyPair signer = new KeyPair();
+            byte[] m = ("message " + i).getBytes();
+            msgs.add(m);
+            pubs.add(signer.point);
+            sigs.add(new SchnorrSig(m, signer.scalar));
+        }
+        darc = Fixtures.darc(new SignerEd25519());
+        keyMaterial = new Encryption.keyIv(16).getKeyMaterial();
+        data = new byte[dataLength];
+        new Random(0).nextBytes(data);
+        dataEnc = Encryption.encryptData(data, keyMaterial);
+    }
+
+    @Benchmark
+    public Point baseMul() {
+        return Ed25519Point.base().mul(scalar);
+    }
+
+    @Benchmark
+    public Point pointMul() {
+        return kp.point.mul(scalar);
+    }
+
+    @Benchmark
+    public Point pointFromBytesMul() throws Exception {
+        return new Ed25519Point(kp.point.toBytes()).mul(scalar);
+    }
+
+    @Benchmark
+    public Point rememberedPointFromBytesMul() throws Exception {
+        return new Ed25519Point(kp.point.toBytes()).mul(scalar, true);
+    }
+
+    @Benchmark
+    public SchnorrSig schnorrSign() {
+        return new SchnorrSig(msg, kp.scalar, kp.point);
+    }
+
+    @Benchmark
+    public boolean schnorrVerify() {
+        return sig.verify(msg, kp.point);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Integer> schnorrVerifyBatch() {
+        return SchnorrSig.verifyBatch(msgs, pubs, sigs);
+    }
+
+    @Benchmark
+    public DarcId darcGetId() throws Exception {
+        return darc.getId();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] encrypt() throws Exception {
+        return Encryption.encryptData(data, keyMaterial);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] decrypt() throws Exception {
+        return Encryption.decryptData(dataEnc, keyMaterial);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int streamEncrypt() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(dataLength + dataLength / 256);
+        StreamEncryption.encrypt(new ByteArrayInputStream(data), out, keyMaterial);
+        return out.size();
+    }
+}
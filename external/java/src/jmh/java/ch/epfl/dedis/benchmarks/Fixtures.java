@@ -0,0 +1,251 @@
+package ch.epfl.dedis.benchmarks;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.crypto.Ed25519Scalar;
+import ch.epfl.dedis.lib.crypto.KeyPair;
+import ch.epfl.dedis.lib.crypto.Point;
+import ch.epfl.dedis.lib.eventlog.Event;
+import ch.epfl.dedis.lib.omniledger.Argument;
+import ch.epfl.dedis.lib.omniledger.ClientTransaction;
+import ch.epfl.dedis.lib.omniledger.ClientTransactionBuilder;
+import ch.epfl.dedis.lib.omniledger.InstanceId;
+import ch.epfl.dedis.lib.omniledger.Invoke;
+import ch.epfl.dedis.lib.omniledger.SubId;
+import ch.epfl.dedis.lib.omniledger.darc.Darc;
+import ch.epfl.dedis.lib.omniledger.darc.Identity;
+import ch.epfl.dedis.lib.omniledger.darc.Signer;
+import ch.epfl.dedis.lib.skipchain.ForwardLink;
+import ch.epfl.dedis.proto.OmniLedgerProto;
+import ch.epfl.dedis.proto.RosterProto;
+import ch.epfl.dedis.proto.SkipBlockProto;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * dedis/benchmarks
+ * Fixtures.java
+ * Purpose: Builds blocks, proofs and transactions the same way as the conodes do, so that the
+ * benchmarks can run without a cothority.
+ */
+public final class Fixtures {
+    private static final ByteString zero = ByteString.copyFrom(new byte[32]);
+    // the order of the base point of ed25519
+    private static final BigInteger order =
+            BigInteger.ONE.shiftLeft(252).add(new BigInteger("27742317777372353535851937790883648493"));
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return a genesis block of omniledger with an empty collection, with the correct hash
+     */
+    public static SkipBlock genesis(RosterProto.Roster roster) throws IOException {
+        return block(0, ByteString.EMPTY, roster, zero);
+    }
+
+    /**
+     * Creates a proof of the key in a collection of depth 2. If values are given, the key is
+     * stored with these values, else it is a proof of absence. The latest block of the proof
+     * follows the genesis block and holds the root of the collection. The forward link from the
+     * genesis block to the latest block is signed by all keys, which must be the ones of the
+     * roster of the genesis block.
+     */
+    public static OmniLedgerProto.Proof proof(SkipBlock genesis, List<KeyPair> keys, ByteString key,
+                                              List<ByteString> values) throws Exception {
+        byte[] path = sha256(key.toByteArray());
+
+        OmniLedgerProto.CollectionProof.Node.Builder end = OmniLedgerProto.CollectionProof.Node.newBuilder();
+        if (values != null) {
+            end.setKey(key).addAllValues(values);
+        } else {
+            end.setKey(ByteString.EMPTY);
+        }
+        OmniLedgerProto.CollectionProof.Node cursor = leaf(end);
+
+        List<OmniLedgerProto.CollectionProof.Step> steps = new ArrayList<>();
+        for (int depth = 1; depth >= 0; depth--) {
+            OmniLedgerProto.CollectionProof.Node other = leaf(OmniLedgerProto.CollectionProof.Node.newBuilder()
+                    .setKey(ByteString.copyFromUtf8("other" + depth)));
+            boolean right = (path[0] & (1 << (7 - depth))) != 0;
+            OmniLedgerProto.CollectionProof.Node left = right ? other : cursor;
+            OmniLedgerProto.CollectionProof.Node r = right ? cursor : other;
+            steps.add(0, OmniLedgerProto.CollectionProof.Step.newBuilder().setLeft(left).setRight(r).build());
+            OmniLedgerProto.CollectionProof.Node.Children children = OmniLedgerProto.CollectionProof.Node.Children
+                    .newBuilder().setLeft(left.getLabel()).setRight(r.getLabel()).build();
+            cursor = OmniLedgerProto.CollectionProof.Node.newBuilder().setChildren(children)
+                    .setLabel(label(false, ByteString.EMPTY, Collections.emptyList(), left.getLabel(), r.getLabel()))
+                    .build();
+        }
+
+        OmniLedgerProto.CollectionProof cp = OmniLedgerProto.CollectionProof.newBuilder()
+                .setKey(key).setRoot(cursor).addAllSteps(steps).build();
+        SkipBlock latest = block(1, genesis.getProto().getHash(), genesis.getProto().getRoster(), cursor.getLabel());
+        return OmniLedgerProto.Proof.newBuilder().setInclusionProof(cp).setLatest(latest.getProto())
+                .addLinks(SkipBlockProto.ForwardLink.newBuilder().setFrom(ByteString.EMPTY)
+                        .setTo(genesis.getProto().getHash()).setNewRoster(genesis.getProto().getRoster())
+                        .setSignature(SkipBlockProto.ByzcoinSig.newBuilder()
+                                .setMsg(ByteString.EMPTY).setSig(ByteString.EMPTY)))
+                .addLinks(link(genesis, latest, keys))
+                .build();
+    }
+
+    /**
+     * @return the forward link from the block from to the block to, signed by all keys
+     */
+    public static SkipBlockProto.ForwardLink link(SkipBlock from, SkipBlock to, List<KeyPair> keys)
+            throws Exception {
+        SkipBlockProto.ForwardLink.Builder fl = SkipBlockProto.ForwardLink.newBuilder()
+                .setFrom(from.getProto().getHash())
+                .setTo(to.getProto().getHash())
+                .setSignature(SkipBlockProto.ByzcoinSig.newBuilder().setMsg(ByteString.EMPTY).setSig(ByteString.EMPTY));
+        byte[] msg = new ForwardLink(fl.build()).hash();
+        return fl.setSignature(SkipBlockProto.ByzcoinSig.newBuilder()
+                .setMsg(ByteString.copyFrom(msg))
+                .setSig(ByteString.copyFrom(sign(keys, msg)))).build();
+    }
+
+    /**
+     * @return a collective signature of all keys on msg, in the format of the cosi protocol
+     */
+    public static byte[] sign(List<KeyPair> keys, byte[] msg) throws Exception {
+        byte[] mask = new byte[(keys.size() + 7) / 8];
+        Point commitment = null;
+        Point aggregate = null;
+        BigInteger secrets = BigInteger.ZERO;
+        BigInteger privates = BigInteger.ZERO;
+        for (int i = 0; i < keys.size(); i++) {
+            KeyPair v = new KeyPair();
+            commitment = commitment == null ? v.point : commitment.add(v.point);
+            aggregate = aggregate == null ? keys.get(i).point : aggregate.add(keys.get(i).point);
+            secrets = secrets.add(scalar(v.scalar.toBytes()));
+            privates = privates.add(scalar(keys.get(i).scalar.toBytes()));
+            mask[i >> 3] |= 1 << (i & 7);
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-512");
+        digest.update(commitment.toBytes());
+        digest.update(aggregate.toBytes());
+        digest.update(msg);
+        BigInteger k = scalar(new Ed25519Scalar(digest.digest()).toBytes());
+        BigInteger r = secrets.add(k.multiply(privates)).mod(order);
+
+        byte[] sig = new byte[64 + mask.length];
+        System.arraycopy(commitment.toBytes(), 0, sig, 0, 32);
+        System.arraycopy(littleEndian(r), 0, sig, 32, 32);
+        System.arraycopy(mask, 0, sig, 64, mask.length);
+        return sig;
+    }
+
+    /**
+     * @return a darc that allows the signer to do everything needed by the benchmarks
+     */
+    public static Darc darc(Signer signer) throws Exception {
+        List<Identity> ids = Collections.singletonList(signer.getIdentity());
+        Map<String, byte[]> rules = Darc.initRules(ids, ids);
+        rules.put("spawn:eventlog", signer.getIdentity().toString().getBytes());
+        rules.put("invoke:eventlog", signer.getIdentity().toString().getBytes());
+        return new Darc(rules, "benchmark".getBytes());
+    }
+
+    /**
+     * @return a signed transaction logging the given number of events
+     */
+    public static ClientTransaction transaction(int events, List<Signer> signers) throws Exception {
+        InstanceId instId = new InstanceId(darc(signers.get(0)).getBaseId(), SubId.zero());
+        ClientTransactionBuilder builder = new ClientTransactionBuilder();
+        for (int i = 0; i < events; i++) {
+            List<Argument> args = new ArrayList<>();
+            args.add(new Argument("event", event(i).toProto().toByteArray()));
+            builder.invoke(instId, new Invoke("eventlog", args));
+        }
+        return builder.build(signers, "event").getTransaction();
+    }
+
+    /**
+     * @return the i-th event of a log that started at the epoch, one event per millisecond
+     */
+    public static Event event(int i) {
+        return new Event(i * 1000L * 1000L, "topic" + (i % 4), "benchmark event number " + i);
+    }
+
+    private static SkipBlock block(int index, ByteString genesis, RosterProto.Roster roster, ByteString root)
+            throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        // onet prefixes the data header with the uuid of its type.
+        buf.write(new byte[16]);
+        CodedOutputStream out = CodedOutputStream.newInstance(buf);
+        out.writeBytes(1, root);
+        out.writeBytes(2, zero);
+        out.writeBytes(3, zero);
+        out.writeSInt64(4, 1234567890);
+        out.flush();
+
+        // the index is zigzag-encoded.
+        SkipBlockProto.SkipBlock.Builder b = SkipBlockProto.SkipBlock.newBuilder()
+                .setIndex(2 * index)
+                .setHeight(1)
+                .setMaxHeight(1)
+                .setBaseHeight(1)
+                .setGenesis(genesis)
+                .setData(ByteString.copyFrom(buf.toByteArray()))
+                .setRoster(roster)
+                .setHash(ByteString.EMPTY);
+        b.setHash(ByteString.copyFrom(new SkipBlock(b.buildPartial()).calculateHash()));
+        return new SkipBlock(b.build());
+    }
+
+    private static OmniLedgerProto.CollectionProof.Node leaf(OmniLedgerProto.CollectionProof.Node.Builder n)
+            throws IOException {
+        n.setChildren(OmniLedgerProto.CollectionProof.Node.Children.newBuilder().setLeft(zero).setRight(zero));
+        return n.setLabel(label(true, n.getKey(), n.getValuesList(), zero, zero)).build();
+    }
+
+    private static ByteString label(boolean leaf, ByteString key, List<ByteString> values, ByteString left,
+                                    ByteString right) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(buf);
+        out.writeBool(1, leaf);
+        out.writeBytes(2, key);
+        for (ByteString v : values) {
+            out.writeBytes(3, v);
+        }
+        out.writeBytes(4, left);
+        out.writeBytes(5, right);
+        out.flush();
+        return ByteString.copyFrom(sha256(buf.toByteArray()));
+    }
+
+    private static BigInteger scalar(byte[] le) {
+        byte[] be = new byte[le.length];
+        for (int i = 0; i < le.length; i++) {
+            be[i] = le[le.length - 1 - i];
+        }
+        return new BigInteger(1, be);
+    }
+
+    private static byte[] littleEndian(BigInteger v) {
+        byte[] be = v.toByteArray();
+        byte[] le = new byte[32];
+        for (int i = 0; i < be.length && i < 32; i++) {
+            le[i] = be[be.length - 1 - i];
+        }
+        return le;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package ch.epfl.dedis.benchmarks;
+
+import ch.epfl.dedis.lib.omniledger.Argument;
+import ch.epfl.dedis.lib.omniledger.ClientTransactionBuilder;
+import ch.epfl.dedis.lib.omniledger.InstanceId;
+import ch.epfl.dedis.lib.omniledger.Instruction;
+import ch.epfl.dedis.lib.omniledger.Invoke;
+import ch.epfl.dedis.lib.omniledger.SubId;
+import ch.epfl.dedis.lib.omniledger.darc.DarcId;
+import ch.epfl.dedis.lib.omniledger.darc.Signer;
+import ch.epfl.dedis.lib.omniledger.darc.SignerEd25519;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing and signing of instructions, alone and in a bulk transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstructionBenchmark {
+    // the number of instructions of the bulk transaction
+    @Param({"100", "10000"})
+    public int batch;
+
+    private InstanceId instId;
+    private List<Argument> args;
+    private List<Signer> signers;
+    private Invoke invoke;
+
+    @Setup
+    public void setup() throws Exception {
+        instId = new InstanceId(new DarcId(new byte[32]), SubId.zero());
+        args = new ArrayList<>();
+        args.add(new Argument("event", Fixtures.event(1).toProto().toByteArray()));
+        invoke = new Invoke("eventlog", args);
+        signers = Collections.singletonList(new SignerEd25519());
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        return new Instruction(instId, new byte[32], 0, 1, invoke).hash();
+    }
+
+    @Benchmark
+    public Instruction signBy() throws Exception {
+        Instruction instr = new Instruction(instId, new byte[32], 0, 1, invoke);
+        instr.signBy(signers);
+        return instr;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ClientTransactionBuilder.Result buildTransaction() throws Exception {
+        ClientTransactionBuilder builder = new ClientTransactionBuilder();
+        for (int i = 0; i < batch; i++) {
+            builder.invoke(instId, invoke);
+        }
+        return builder.build(signers, "event");
+    }
+}
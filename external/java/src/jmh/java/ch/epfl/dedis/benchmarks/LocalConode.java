@@ -0,0 +1,276 @@
+package ch.epfl.dedis.benchmarks;
+
+import ch.epfl.dedis.lib.Roster;
+import ch.epfl.dedis.lib.ServerIdentity;
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.crypto.KeyPair;
+import ch.epfl.dedis.lib.eventlog.Event;
+import ch.epfl.dedis.lib.omniledger.InstanceId;
+import ch.epfl.dedis.lib.omniledger.SubId;
+import ch.epfl.dedis.lib.omniledger.darc.Darc;
+import ch.epfl.dedis.lib.omniledger.darc.DarcId;
+import ch.epfl.dedis.proto.EventLogProto;
+import ch.epfl.dedis.proto.OmniLedgerProto;
+import ch.epfl.dedis.proto.SkipchainProto;
+import ch.epfl.dedis.proto.StatusProto;
+import ch.epfl.dedis.proto.TransactionProto;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * dedis/benchmarks
+ * LocalConode.java
+ * Purpose: A stand-in for a conode that runs in the same process. It answers the requests of the
+ * OmniLedger, Skipchain and EventLog services with canned protobufs, so that the client can be
+ * benchmarked end-to-end without a cothority.
+ * <p>
+ * Contrary to a real conode, transactions are applied right away and nothing is checked, but the
+ * proofs and blocks it returns verify like the ones of a conode.
+ */
+public class LocalConode extends WebSocketServer implements AutoCloseable {
+    // how many events a search returns at most before it is truncated, like the eventlog service.
+    public static final int searchLimit = 50;
+
+    private final KeyPair keys = new KeyPair();
+    private final Roster roster;
+    private final SkipBlock genesis;
+    private final Map<String, Handler> handlers = new HashMap<>();
+    private final Map<ByteString, List<ByteString>> instances = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, List<Event>> events = new TreeMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile Exception failure;
+
+    /**
+     * Creates the stand-in, which listens for clients on port + 1, like a conode.
+     *
+     * @param port the port of the conode
+     */
+    public LocalConode(int port) throws IOException {
+        super(new InetSocketAddress("127.0.0.1", port + 1));
+        roster = new Roster(Collections.singletonList(new ServerIdentity(URI.create("tcp://127.0.0.1:" + port),
+                keys.point.toString())));
+        genesis = Fixtures.genesis(roster.toProto());
+
+        handlers.put("Status/Request", req -> StatusProto.Response.newBuilder()
+                .setServer(roster.getNodes().get(0).toProto()).build());
+        handlers.put("OmniLedger/CreateGenesisBlock", this::createGenesisBlock);
+        handlers.put("OmniLedger/AddTxRequest", this::addTx);
+        handlers.put("OmniLedger/GetProof", this::getProof);
+        handlers.put("Skipchain/GetSingleBlock", this::getSingleBlock);
+        handlers.put("Skipchain/GetUpdateChain", this::getUpdateChain);
+        handlers.put("EventLog/SearchRequest", this::search);
+    }
+
+    /**
+     * Starts the stand-in and waits until it accepts connections.
+     */
+    public static LocalConode start(int port) throws IOException, InterruptedException {
+        LocalConode conode = new LocalConode(port);
+        conode.start();
+        if (!conode.started.await(10, TimeUnit.SECONDS) || conode.failure != null) {
+            throw new IOException("couldn't start the local conode on port " + (port + 1), conode.failure);
+        }
+        return conode;
+    }
+
+    /**
+     * @return a roster with this stand-in as the only node
+     */
+    public Roster getRoster() {
+        return roster;
+    }
+
+    /**
+     * @return the genesis block returned to OmniLedger/CreateGenesisBlock
+     */
+    public SkipBlock getGenesis() {
+        return genesis;
+    }
+
+    /**
+     * @return how many requests have been answered
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Stores an instance in the global state, so that GetProof returns a proof of it.
+     */
+    public void putInstance(InstanceId id, byte[] data, String contractId) {
+        instances.put(id.toByteString(), Arrays.asList(ByteString.copyFrom(data), ByteString.copyFromUtf8(contractId)));
+    }
+
+    /**
+     * Adds an event to the log, as if it had been sent in a transaction.
+     */
+    public void addEvent(Event e) {
+        synchronized (events) {
+            events.computeIfAbsent(e.getWhen(), k -> new ArrayList<>()).add(e);
+        }
+    }
+
+    /**
+     * Removes all events from the log, including the ones sent in transactions.
+     */
+    public void clearEvents() {
+        synchronized (events) {
+            events.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        stop();
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        conn.close(4000, "only binary messages are supported");
+    }
+
+    // The messages of a connection are handled one after the other by the same worker, so the
+    // replies are sent in the order of the requests, which is what the client expects.
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        Handler h = handlers.get(conn.getResourceDescriptor().replaceFirst("^/", ""));
+        if (h == null) {
+            conn.close(4000, "unknown path " + conn.getResourceDescriptor());
+            return;
+        }
+        try {
+            MessageLite reply = h.handle(message);
+            requests.incrementAndGet();
+            conn.send(reply.toByteArray());
+        } catch (Exception e) {
+            // like the conode, an error of the service closes the connection with a code of 4000 and above
+            conn.close(4000, e.toString());
+        }
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        // without a connection, the server itself failed, e.g. because the port is taken
+        if (conn == null) {
+            failure = ex;
+            started.countDown();
+        }
+    }
+
+    private MessageLite createGenesisBlock(ByteBuffer msg) throws Exception {
+        OmniLedgerProto.CreateGenesisBlock req = OmniLedgerProto.CreateGenesisBlock.parseFrom(msg);
+        // the conode stores the darc and the config in the genesis block
+        Darc darc = new Darc(req.getGenesisdarc());
+        DarcId darcId = darc.getBaseId();
+        putInstance(InstanceId.zero(), darcId.getId(), "config");
+        putInstance(new InstanceId(darcId, SubId.zero()), req.getGenesisdarc().toByteArray(), "darc");
+        putInstance(new InstanceId(darcId, SubId.one()), OmniLedgerProto.Config.newBuilder()
+                .setBlockInterval(req.getBlockinterval()).build().toByteArray(), "config");
+        return OmniLedgerProto.CreateGenesisBlockResponse.newBuilder()
+                .setVersion(req.getVersion())
+                .setSkipblock(genesis.getProto())
+                .build();
+    }
+
+    private MessageLite addTx(ByteBuffer msg) throws Exception {
+        OmniLedgerProto.AddTxRequest req = OmniLedgerProto.AddTxRequest.parseFrom(msg);
+        for (TransactionProto.Instruction instr : req.getTransaction().getInstructionsList()) {
+            if (!instr.hasInvoke()) {
+                continue;
+            }
+            for (TransactionProto.Argument arg : instr.getInvoke().getArgsList()) {
+                if (arg.getName().equals("event")) {
+                    addEvent(new Event(EventLogProto.Event.parseFrom(arg.getValue())));
+                }
+            }
+        }
+        return OmniLedgerProto.AddTxResponse.newBuilder().setVersion(req.getVersion()).build();
+    }
+
+    private MessageLite getProof(ByteBuffer msg) throws Exception {
+        OmniLedgerProto.GetProof req = OmniLedgerProto.GetProof.parseFrom(msg);
+        if (!req.getId().equals(genesis.getProto().getHash())) {
+            throw new IllegalArgumentException("unknown skipchain");
+        }
+        return OmniLedgerProto.GetProofResponse.newBuilder()
+                .setVersion(req.getVersion())
+                .setProof(Fixtures.proof(genesis, Collections.singletonList(keys), req.getKey(), instances.get(req.getKey())))
+                .build();
+    }
+
+    private MessageLite getSingleBlock(ByteBuffer msg) throws Exception {
+        SkipchainProto.GetSingleBlock req = SkipchainProto.GetSingleBlock.parseFrom(msg);
+        if (!req.getId().equals(genesis.getProto().getHash())) {
+            throw new IllegalArgumentException("unknown block");
+        }
+        return genesis.getProto();
+    }
+
+    private MessageLite getUpdateChain(ByteBuffer msg) throws Exception {
+        SkipchainProto.GetUpdateChain req = SkipchainProto.GetUpdateChain.parseFrom(msg);
+        if (!req.getLatestID().equals(genesis.getProto().getHash())) {
+            throw new IllegalArgumentException("unknown block");
+        }
+        return SkipchainProto.GetUpdateChainReply.newBuilder().addUpdate(genesis.getProto()).build();
+    }
+
+    private MessageLite search(ByteBuffer msg) throws Exception {
+        EventLogProto.SearchRequest req = EventLogProto.SearchRequest.parseFrom(msg);
+        EventLogProto.SearchResponse.Builder reply = EventLogProto.SearchResponse.newBuilder().setTruncated(false);
+        // like the service: from <= when < to, where a to of 0 is the current time
+        long to = req.getTo() == 0 ? System.currentTimeMillis() * 1000 * 1000 : req.getTo();
+        synchronized (events) {
+            for (List<Event> list : events.subMap(req.getFrom(), true, to, false).values()) {
+                for (Event e : list) {
+                    if (!req.getTopic().isEmpty() && !req.getTopic().equals(e.getTopic())) {
+                        continue;
+                    }
+                    reply.addEvents(e.toProto());
+                    // the service marks a full page as truncated, even if there are no more events
+                    if (reply.getEventsCount() >= searchLimit) {
+                        return reply.setTruncated(true).build();
+                    }
+                }
+            }
+        }
+        return reply.build();
+    }
+
+    private interface Handler {
+        MessageLite handle(ByteBuffer request) throws Exception;
+    }
+}
@@ -0,0 +1,107 @@
+package ch.epfl.dedis.benchmarks;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.crypto.KeyPair;
+import ch.epfl.dedis.lib.omniledger.ClientTransaction;
+import ch.epfl.dedis.lib.omniledger.Proof;
+import ch.epfl.dedis.lib.omniledger.darc.Signer;
+import ch.epfl.dedis.lib.omniledger.darc.SignerEd25519;
+import ch.epfl.dedis.lib.Roster;
+import ch.epfl.dedis.lib.ServerIdentity;
+import ch.epfl.dedis.proto.OmniLedgerProto;
+import ch.epfl.dedis.proto.SkipBlockProto;
+import ch.epfl.dedis.proto.TransactionProto;
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the messages that are sent most often: the skipblocks, the proofs and the
+ * transactions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    // the number of instructions in the transaction
+    @Param({"1", "100"})
+    public int instructions;
+
+    private SkipBlock block;
+    private byte[] blockBytes;
+    private byte[] proofBytes;
+    private ClientTransaction transaction;
+    private byte[] transactionBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        List<KeyPair> keys = new ArrayList<>();
+        List<ServerIdentity> nodes = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            keys.add(new KeyPair());
+            nodes.add(new ServerIdentity(URI.create("tcp://127.0.0.1:" + (7002 + 2 * i)),
+                    keys.get(i).point.toString()));
+        }
+        block = Fixtures.genesis(new Roster(nodes).toProto());
+        blockBytes = block.getProto().toByteArray();
+        proofBytes = Fixtures.proof(block, keys, ByteString.copyFrom(new byte[64]),
+                Arrays.asList(ByteString.copyFrom(new byte[256]), ByteString.copyFromUtf8("eventlog"))).toByteArray();
+        List<Signer> signers = Collections.singletonList(new SignerEd25519());
+        transaction = Fixtures.transaction(instructions, signers);
+        transactionBytes = transaction.toProto().toByteArray();
+    }
+
+    @Benchmark
+    public SkipBlock parseSkipBlock() throws Exception {
+        return new SkipBlock(SkipBlockProto.SkipBlock.parseFrom(blockBytes));
+    }
+
+    @Benchmark
+    public byte[] serializeSkipBlock() {
+        return block.getProto().toByteArray();
+    }
+
+    @Benchmark
+    public byte[] hashSkipBlock() {
+        return block.calculateHash();
+    }
+
+    @Benchmark
+    public Proof parseProof() throws Exception {
+        return new Proof(OmniLedgerProto.Proof.parseFrom(proofBytes));
+    }
+
+    @Benchmark
+    public boolean parseAndVerifyProof() throws Exception {
+        return new Proof(OmniLedgerProto.Proof.parseFrom(proofBytes)).verify(block);
+    }
+
+    @Benchmark
+    public TransactionProto.ClientTransaction parseClientTransaction() throws Exception {
+        return TransactionProto.ClientTransaction.parseFrom(transactionBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeClientTransaction() {
+        return transaction.toProto().toByteArray();
+    }
+}
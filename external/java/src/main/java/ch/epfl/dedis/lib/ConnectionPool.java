@@ -0,0 +1,524 @@
+package ch.epfl.dedis.lib;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTimeoutException;
+import ch.epfl.dedis.lib.exception.CothorityUnavailableException;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ServerHandshake;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * dedis/lib
+ * ConnectionPool.java
+ * Purpose: Keeps the websocket connections to the conodes open, so that the
+ * handshake is only paid once per connection and not once per request.
+ * <p>
+ * A conode handles the messages of one websocket one after the other and sends
+ * the replies back in the same order. So every connection keeps the requests
+ * in flight in a FIFO and matches each reply to the oldest request. When the
+ * conode returns an error, it closes the connection with the error as reason:
+ * only the oldest request gets the error, the other requests have not been
+ * processed yet and are sent again on another connection.
+ * <p>
+ * Every request has a deadline. If the conode didn't reply in time, the request
+ * fails and its connection is closed, as a conode that keeps the socket open
+ * but doesn't reply anymore would block all requests behind it. The other
+ * requests of the connection are sent again on another connection.
+ * <p>
+ * Requests that fail because the conode could not be reached fail with a
+ * CothorityUnavailableException, requests that have not been answered in time
+ * with its subclass CothorityTimeoutException, and errors of the service with
+ * a CothorityCommunicationException.
+ */
+public class ConnectionPool {
+    // how many times a request is re-sent if its connection closes before it is processed.
+    private static final int maxAttempts = 3;
+    private static final long defaultRequestTimeoutMillis = 60_000;
+    private static final ConnectionPool shared = new ConnectionPool(4, 16);
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setName("connection-pool-timer");
+        t.setDaemon(true);
+        return t;
+    });
+    // how long await waits at most, it also covers requests that are made of many requests, like waiting for a block.
+    private static volatile long awaitTimeoutMillis = 10 * 60_000;
+
+    static {
+        // most requests are answered before their deadline, so the timeouts are removed right away.
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    private final int maxConnections;
+    private final int maxInFlight;
+    private final long requestTimeoutMillis;
+    private final Map<URI, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    private final static Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxConnections how many connections are opened at most to the same address
+     * @param maxInFlight    how many requests are pipelined on a connection before a new
+     *                       connection is opened
+     */
+    public ConnectionPool(int maxConnections, int maxInFlight) {
+        this(maxConnections, maxInFlight, defaultRequestTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new pool where requests fail if they are not answered in time.
+     *
+     * @param maxConnections how many connections are opened at most to the same address
+     * @param maxInFlight    how many requests are pipelined on a connection before a new
+     *                       connection is opened
+     * @param requestTimeout how long to wait for the reply of a request, including the time
+     *                       to open the connection and to send it again on another connection
+     * @param unit           the unit of requestTimeout
+     */
+    public ConnectionPool(int maxConnections, int maxInFlight, long requestTimeout, TimeUnit unit) {
+        if (maxConnections < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("need at least one connection and one request in flight");
+        }
+        if (requestTimeout <= 0) {
+            throw new IllegalArgumentException("the request timeout must be positive");
+        }
+        this.maxConnections = maxConnections;
+        this.maxInFlight = maxInFlight;
+        this.requestTimeoutMillis = unit.toMillis(requestTimeout);
+    }
+
+    /**
+     * @return the pool used by all ServerIdentities.
+     */
+    public static ConnectionPool getShared() {
+        return shared;
+    }
+
+    /**
+     * Sends a message to the websocket-address and returns a future that completes with the
+     * reply of the conode. The future completes exceptionally with a CothorityCommunicationException
+     * if the conode returns an error, with a CothorityUnavailableException if it cannot be
+     * reached, or with a CothorityTimeoutException if it doesn't reply within the request timeout.
+     * <p>
+     * The future is completed on the thread reading from the websocket, so dependent actions
+     * that block should be run with one of the *Async-methods of the future.
+     *
+     * @param address the websocket-address, including the path of the service
+     * @param msg     the serialized message
+     * @return the future reply
+     */
+    public CompletableFuture<byte[]> send(URI address, byte[] msg) {
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        Request r = new Request(msg, reply);
+        ScheduledFuture<?> deadline = timer.schedule(() -> expire(r), requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        reply.whenComplete((buf, e) -> deadline.cancel(false));
+        endpoints.computeIfAbsent(address, Endpoint::new).dispatch(r);
+        return reply;
+    }
+
+    /**
+     * @return how long a request waits for its reply, in milliseconds
+     */
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * @param address the websocket-address, including the path of the service
+     * @return how many connections to this address are open or opening
+     */
+    public int connectionCount(URI address) {
+        Endpoint e = endpoints.get(address);
+        return e == null ? 0 : e.size();
+    }
+
+    /**
+     * Closes all connections of this pool. Requests in flight fail, new requests
+     * will open new connections.
+     */
+    public void close() {
+        for (Endpoint e : endpoints.values()) {
+            e.close();
+        }
+        endpoints.clear();
+    }
+
+    /**
+     * Sets how long await waits for a future before giving up. The default is ten minutes, which
+     * is longer than the timeout of a single request, so that futures made of many requests, like
+     * waiting for an instance to be stored, have time to complete.
+     *
+     * @param timeout how long to wait
+     * @param unit    the unit of timeout
+     */
+    public static void setAwaitTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("the timeout must be positive");
+        }
+        awaitTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Waits for the future and unwraps its exception, for the blocking methods that are
+     * built on top of the asynchronous ones. It waits at most for the time given to
+     * setAwaitTimeout.
+     *
+     * @param future the future to wait for
+     * @param <T>    the type of the result
+     * @return the result of the future
+     * @throws CothorityCommunicationException if the future failed or the waiting has been interrupted,
+     *                                         a CothorityTimeoutException if it didn't complete in time
+     */
+    public static <T> T await(CompletableFuture<T> future) throws CothorityCommunicationException {
+        return await(future, awaitTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Like await, but waits at most for the given time.
+     *
+     * @param future  the future to wait for
+     * @param timeout how long to wait
+     * @param unit    the unit of timeout
+     * @param <T>     the type of the result
+     * @return the result of the future
+     * @throws CothorityCommunicationException if the future failed or the waiting has been interrupted,
+     *                                         a CothorityTimeoutException if it didn't complete in time
+     */
+    public static <T> T await(CompletableFuture<T> future, long timeout, TimeUnit unit)
+            throws CothorityCommunicationException {
+        try {
+            return future.get(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CothorityCommunicationException(e.toString());
+        } catch (TimeoutException e) {
+            throw new CothorityTimeoutException("no reply within " + unit.toMillis(timeout) + "ms", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CothorityCommunicationException) {
+                throw (CothorityCommunicationException) cause;
+            }
+            throw new CothorityCommunicationException(cause.toString(), cause);
+        }
+    }
+
+    /**
+     * Fails a request that has not been answered in time and closes its connection, if the
+     * request has been sent already. The other requests of the connection are sent again.
+     */
+    private void expire(Request r) {
+        String err = "no reply within " + requestTimeoutMillis + "ms";
+        if (!r.reply.completeExceptionally(new CothorityTimeoutException(err))) {
+            return;
+        }
+        Connection c = r.connection;
+        if (c != null) {
+            c.expire(r, err);
+        }
+    }
+
+    private static final class Request {
+        private final byte[] msg;
+        private final CompletableFuture<byte[]> reply;
+        private int attempts;
+        // the connection the request has been given to last
+        private volatile Connection connection;
+
+        private Request(byte[] msg, CompletableFuture<byte[]> reply) {
+            this.msg = msg;
+            this.reply = reply;
+        }
+    }
+
+    /**
+     * All connections to one websocket-address.
+     */
+    private final class Endpoint {
+        private final URI address;
+        private final List<Connection> connections = new ArrayList<>();
+        private boolean shutdown;
+
+        private Endpoint(URI address) {
+            this.address = address;
+        }
+
+        private synchronized void dispatch(Request r) {
+            if (r.reply.isDone()) {
+                // the request timed out in the meantime
+                return;
+            }
+            r.attempts++;
+            if (shutdown) {
+                r.reply.completeExceptionally(new CothorityUnavailableException("connection pool has been closed"));
+                return;
+            }
+            while (true) {
+                connections.removeIf(Connection::isDead);
+                Connection best = null;
+                for (Connection c : connections) {
+                    if (best == null || c.load() < best.load()) {
+                        best = c;
+                    }
+                }
+                if (best == null || (best.load() >= maxInFlight && connections.size() < maxConnections)) {
+                    best = new Connection(this);
+                    connections.add(best);
+                    best.start();
+                }
+                if (best.enqueue(r)) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized int size() {
+            connections.removeIf(Connection::isDead);
+            return connections.size();
+        }
+
+        private void close() {
+            List<Connection> closing;
+            synchronized (this) {
+                shutdown = true;
+                closing = new ArrayList<>(connections);
+                connections.clear();
+            }
+            // The websocket calls onClose while holding its own lock, so it must not be closed
+            // while holding one of ours.
+            for (Connection c : closing) {
+                c.shutdown();
+            }
+        }
+    }
+
+    /**
+     * One websocket to a conode with its requests in flight.
+     */
+    private final class Connection extends WebSocketClient {
+        private final Endpoint endpoint;
+        private final Deque<Request> inFlight = new ArrayDeque<>();
+        private final List<Request> waiting = new ArrayList<>();
+        private boolean opened;
+        private boolean closed;
+        private boolean timedOut;
+        private String error;
+
+        private Connection(Endpoint endpoint) {
+            super(endpoint.address);
+            this.endpoint = endpoint;
+            setTcpNoDelay(true);
+        }
+
+        // Runs the connection in a daemon thread, so that open connections in the pool don't keep the
+        // JVM alive. The threads started by the websocket inherit this.
+        private void start() {
+            Thread t = new Thread(this, "conode-" + endpoint.address);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private synchronized int load() {
+            return inFlight.size() + waiting.size();
+        }
+
+        private synchronized boolean isDead() {
+            return closed;
+        }
+
+        // Returns false if the connection has been closed in the meantime.
+        private synchronized boolean enqueue(Request r) {
+            if (closed) {
+                return false;
+            }
+            r.connection = this;
+            if (!opened) {
+                waiting.add(r);
+                return true;
+            }
+            inFlight.add(r);
+            try {
+                send(r.msg);
+            } catch (RuntimeException e) {
+                inFlight.removeLast();
+                return false;
+            }
+            return true;
+        }
+
+        // Removes a request that timed out. If it has been sent, the conode stopped replying and the
+        // connection is closed, so that the requests behind it are sent again. If the connection
+        // could not be opened in time, it is given up and its waiting requests are sent again.
+        private void expire(Request r, String err) {
+            List<Request> redispatch = new ArrayList<>();
+            boolean hung;
+            synchronized (this) {
+                hung = inFlight.remove(r);
+                if (hung) {
+                    timedOut = true;
+                    error = err;
+                } else if (waiting.remove(r) && !opened) {
+                    closed = true;
+                    redispatch.addAll(waiting);
+                    waiting.clear();
+                }
+            }
+            if (hung) {
+                logger.warn("{} didn't reply within the timeout, closing the connection", endpoint.address);
+                // a hung conode won't answer the closing handshake, so the socket is closed right away.
+                closeConnection(CloseFrame.ABNORMAL_CLOSE, err);
+            }
+            for (Request w : redispatch) {
+                if (w.attempts < maxAttempts) {
+                    endpoint.dispatch(w);
+                } else {
+                    w.reply.completeExceptionally(new CothorityUnavailableException(err));
+                }
+            }
+        }
+
+        // Closes the connection. If it is not open yet, the waiting requests fail directly and the
+        // connection is closed as soon as it opens.
+        private void shutdown() {
+            List<Request> failed;
+            boolean open;
+            synchronized (this) {
+                open = opened;
+                if (!open) {
+                    closed = true;
+                }
+                failed = new ArrayList<>(waiting);
+                waiting.clear();
+            }
+            if (open) {
+                close();
+            }
+            for (Request r : failed) {
+                r.reply.completeExceptionally(new CothorityUnavailableException("connection pool has been closed"));
+            }
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            synchronized (this) {
+                if (!closed) {
+                    opened = true;
+                    for (Request r : waiting) {
+                        inFlight.add(r);
+                        send(r.msg);
+                    }
+                    waiting.clear();
+                    return;
+                }
+            }
+            close();
+        }
+
+        @Override
+        public void onMessage(ByteBuffer message) {
+            Request r;
+            synchronized (this) {
+                if (timedOut) {
+                    // the replies can't be matched anymore, the requests are sent again once it is closed
+                    return;
+                }
+                r = inFlight.poll();
+            }
+            if (r == null) {
+                logger.warn("got a reply without request from {}", endpoint.address);
+                return;
+            }
+            byte[] buf = new byte[message.remaining()];
+            message.get(buf);
+            r.reply.complete(buf);
+        }
+
+        @Override
+        public void onMessage(String msg) {
+            Request r;
+            synchronized (this) {
+                if (timedOut) {
+                    return;
+                }
+                r = inFlight.poll();
+            }
+            if (r != null) {
+                r.reply.completeExceptionally(new CothorityCommunicationException("This should never happen:" + msg));
+            }
+        }
+
+        @Override
+        public synchronized void onError(Exception ex) {
+            if (!timedOut) {
+                error = "Error: " + ex.toString();
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            Request head;
+            List<Request> rest = new ArrayList<>();
+            boolean wasOpen;
+            String err;
+            synchronized (this) {
+                closed = true;
+                wasOpen = opened;
+                // if the connection has been closed because a request timed out, that request has
+                // failed already and none of the others is to blame.
+                head = timedOut ? null : inFlight.poll();
+                rest.addAll(inFlight);
+                rest.addAll(waiting);
+                inFlight.clear();
+                waiting.clear();
+                if (timedOut) {
+                    err = error;
+                } else if (reason != null && !reason.isEmpty()) {
+                    err = reason;
+                } else if (error != null) {
+                    err = error;
+                } else {
+                    err = "connection closed with code " + code;
+                }
+            }
+            if (head == null && rest.isEmpty()) {
+                return;
+            }
+            logger.error("error: {}", err);
+            if (head != null) {
+                // The conode closes with a code of 4000 and above if its service returned an error.
+                if (remote && code >= 4000 && code < 5000) {
+                    head.reply.completeExceptionally(new CothorityCommunicationException(err));
+                } else {
+                    head.reply.completeExceptionally(new CothorityUnavailableException(err));
+                }
+            }
+            for (Request r : rest) {
+                // If the connection could not be opened, the next one will most probably fail, too.
+                if (wasOpen && r.attempts < maxAttempts) {
+                    endpoint.dispatch(r);
+                } else {
+                    r.reply.completeExceptionally(new CothorityUnavailableException(err));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ch.epfl.dedis.lib;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * dedis/lib
+ * HealthTracker.java
+ * Purpose: Holds the NodeHealth of every conode that has been contacted. As ServerIdentities are
+ * created anew for every Roster, the health is stored by the address of the conode.
+ */
+public class HealthTracker {
+    private static final HealthTracker shared = new HealthTracker();
+
+    private final Map<URI, NodeHealth> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * @return the tracker used by all ServerIdentities.
+     */
+    public static HealthTracker getShared() {
+        return shared;
+    }
+
+    /**
+     * @param si the conode
+     * @return the health of the conode, created if it has not been contacted yet
+     */
+    public NodeHealth get(ServerIdentity si) {
+        return nodes.computeIfAbsent(si.getAddress(), a -> new NodeHealth());
+    }
+
+    /**
+     * Moves the unhealthy nodes to the end of the list, keeping the order otherwise.
+     *
+     * @param order the nodes in the order of preference
+     * @return a new list with the healthy nodes first
+     */
+    public List<ServerIdentity> healthyFirst(List<ServerIdentity> order) {
+        List<ServerIdentity> healthy = new ArrayList<>();
+        List<ServerIdentity> unhealthy = new ArrayList<>();
+        for (ServerIdentity si : order) {
+            if (get(si).isHealthy()) {
+                healthy.add(si);
+            } else {
+                unhealthy.add(si);
+            }
+        }
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+}
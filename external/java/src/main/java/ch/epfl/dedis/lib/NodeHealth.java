@@ -0,0 +1,158 @@
+package ch.epfl.dedis.lib;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * dedis/lib
+ * NodeHealth.java
+ * Purpose: Statistics about the requests sent to one conode: how many are outstanding, how long
+ * they took and whether the conode could be reached. They are used by the NodeSelector to choose
+ * the node for the next request and by the Roster to decide when to hedge a request.
+ * <p>
+ * A request that timed out counts as a failure and its waiting time as a latency. Requests that
+ * are still waiting for their reply count, too: the expected latency of a node is at least the
+ * time its oldest outstanding request has been waiting, so a node that stopped replying gets no
+ * new requests even before the first of them times out.
+ */
+public class NodeHealth {
+    // weight of the newest sample in the moving average of the latency.
+    private static final double alpha = 0.3;
+    // how many latencies are kept to calculate the percentiles.
+    private static final int samples = 128;
+    // a percentile is only given once this many latencies are known.
+    private static final int minSamples = 8;
+    private static final long minBackoffNanos = 1_000_000_000L;
+    private static final long maxBackoffNanos = 30_000_000_000L;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final long[] latencies = new long[samples];
+    // the start times of the outstanding requests, with how many requests started at that time
+    private final TreeMap<Long, Integer> pending = new TreeMap<>();
+    private int latencyCount;
+    private double ewmaNanos;
+    private int consecutiveFailures;
+    private long lastFailure;
+
+    /**
+     * Marks the start of a request.
+     *
+     * @return the start time to be given to succeeded or failed
+     */
+    public long started() {
+        long start = System.nanoTime();
+        synchronized (this) {
+            outstanding.incrementAndGet();
+            pending.merge(start, 1, Integer::sum);
+        }
+        return start;
+    }
+
+    /**
+     * Marks a request as answered. A request where the service returned an error counts as
+     * answered, too.
+     *
+     * @param start the value returned by started
+     */
+    public synchronized void succeeded(long start) {
+        done(start);
+        recordLatency(System.nanoTime() - start);
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Marks a request as failed because the conode could not be reached.
+     *
+     * @param start the value returned by started
+     */
+    public synchronized void failed(long start) {
+        done(start);
+        consecutiveFailures++;
+        lastFailure = System.nanoTime();
+    }
+
+    /**
+     * Marks a request as failed because the conode didn't reply in time. The time waited is
+     * recorded as its latency, so that the node is not chosen because of its earlier, faster
+     * replies.
+     *
+     * @param start the value returned by started
+     */
+    public synchronized void timedOut(long start) {
+        failed(start);
+        recordLatency(lastFailure - start);
+    }
+
+    /**
+     * @return how many requests have been sent to the node and are not answered yet
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the exponentially weighted moving average of the latency in nanoseconds, 0 if no
+     * request has been answered yet
+     */
+    public synchronized double getEwmaNanos() {
+        return ewmaNanos;
+    }
+
+    /**
+     * @return the latency to expect from the node in nanoseconds: the moving average of its latency,
+     * or how long its oldest outstanding request is waiting already, if that is longer
+     */
+    public synchronized double getExpectedNanos() {
+        if (pending.isEmpty()) {
+            return ewmaNanos;
+        }
+        return Math.max(ewmaNanos, System.nanoTime() - pending.firstKey());
+    }
+
+    /**
+     * Returns the given percentile of the latest latencies.
+     *
+     * @param percentile between 0 and 100
+     * @return the latency in nanoseconds, or -1 if not enough requests have been answered yet
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        int n = Math.min(latencyCount, samples);
+        if (n < minSamples) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
+    }
+
+    /**
+     * A node is unhealthy after a failed request. It stays so for a backoff that doubles with
+     * every consecutive failure, afterwards it is given another chance.
+     *
+     * @return true if the node should be tried
+     */
+    public synchronized boolean isHealthy() {
+        if (consecutiveFailures == 0) {
+            return true;
+        }
+        long backoff = minBackoffNanos << Math.min(consecutiveFailures - 1, 5);
+        return System.nanoTime() - lastFailure > Math.min(backoff, maxBackoffNanos);
+    }
+
+    private void done(long start) {
+        outstanding.decrementAndGet();
+        pending.computeIfPresent(start, (k, n) -> n == 1 ? null : n - 1);
+    }
+
+    private void recordLatency(long latency) {
+        latencies[latencyCount % samples] = latency;
+        if (latencyCount == 0) {
+            ewmaNanos = latency;
+        } else {
+            ewmaNanos = alpha * latency + (1 - alpha) * ewmaNanos;
+        }
+        latencyCount++;
+    }
+}
@@ -0,0 +1,71 @@
+package ch.epfl.dedis.lib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * dedis/lib
+ * NodeSelector.java
+ * Purpose: Decides which node of a roster gets the next read-request. The nodes are returned in
+ * the order they should be tried: the first one gets the request, the others are used if it
+ * fails or if the request is hedged.
+ */
+public interface NodeSelector {
+    /**
+     * @param nodes  the nodes of the roster
+     * @param health the health of the nodes
+     * @return the nodes in the order of preference
+     */
+    List<ServerIdentity> order(List<ServerIdentity> nodes, HealthTracker health);
+
+    /**
+     * Sends the requests to one node after the other.
+     */
+    class RoundRobin implements NodeSelector {
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public List<ServerIdentity> order(List<ServerIdentity> nodes, HealthTracker health) {
+            List<ServerIdentity> ret = new ArrayList<>(nodes);
+            Collections.rotate(ret, -Math.floorMod(next.getAndIncrement(), ret.size()));
+            return ret;
+        }
+    }
+
+    /**
+     * Sends the request to the node with the fewest requests in flight.
+     */
+    class LeastOutstanding implements NodeSelector {
+        @Override
+        public List<ServerIdentity> order(List<ServerIdentity> nodes, HealthTracker health) {
+            List<ServerIdentity> ret = new ArrayList<>(nodes);
+            // shuffle first, so that equal nodes share the load.
+            Collections.shuffle(ret, ThreadLocalRandom.current());
+            ret.sort(Comparator.comparingInt(si -> health.get(si).getOutstanding()));
+            return ret;
+        }
+    }
+
+    /**
+     * Sends the request to the node with the lowest expected latency: the moving average of its
+     * latency, or the time its oldest outstanding request is waiting if that is longer, multiplied
+     * by the number of requests it already has to answer. Nodes without latency get tried first,
+     * so that every node gets measured.
+     */
+    class EwmaLatency implements NodeSelector {
+        @Override
+        public List<ServerIdentity> order(List<ServerIdentity> nodes, HealthTracker health) {
+            List<ServerIdentity> ret = new ArrayList<>(nodes);
+            Collections.shuffle(ret, ThreadLocalRandom.current());
+            ret.sort(Comparator.comparingDouble(si -> {
+                NodeHealth h = health.get(si);
+                return h.getExpectedNanos() * (h.getOutstanding() + 1);
+            }));
+            return ret;
+        }
+    }
+}
@@ -3,25 +3,66 @@ package ch.epfl.dedis.lib;
 import ch.epfl.dedis.lib.crypto.Ed25519;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityUnavailableException;
 import ch.epfl.dedis.proto.RosterProto;
 import ch.epfl.dedis.proto.ServerIdentityProto;
+import ch.epfl.dedis.proto.StatusProto;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import com.moandjiezana.toml.Toml;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * dedis/lib
  * Roster.java
  * Purpose: A list of ServerIdentities make up a roster that can be used as a temporary
  * cothority.
+ * <p>
+ * All requests go to the leader, the first node of the roster, unless a NodeSelector is set
+ * with setNodeSelector. Then read-only requests are spread over the roster and sent to another
+ * node if one fails, but they may be answered by a node that lags behind the leader.
  */
 
 public class Roster {
     private List<ServerIdentity> nodes = new ArrayList<>();
     private Point aggregate; // TODO: can we find better name for it? like aggregatePublicKey or aggregatedKey?
+    private volatile NodeSelector selector;
+    private double hedgePercentile;
+
+    // requests that don't change the state of the conodes and can be answered by any node.
+    private static final Set<String> readPaths = new HashSet<>(Arrays.asList(
+            "OmniLedger/GetProof",
+            "Skipchain/GetSingleBlock",
+            "Skipchain/GetUpdateChain",
+            "EventLog/SearchRequest",
+            "OnChainSecrets/SharedPublicRequest",
+            "OnChainSecrets/GetDarcPath",
+            "OnChainSecrets/GetLatestDarc",
+            "Status/Request"));
+    // read-only requests that may be sent twice to hedge against a slow node.
+    private static final Set<String> hedgePaths = new HashSet<>(Arrays.asList(
+            "OmniLedger/GetProof",
+            "Skipchain/GetSingleBlock",
+            "EventLog/SearchRequest"));
+    private static final ScheduledExecutorService hedger = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "roster-hedger");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final static Logger logger = LoggerFactory.getLogger(Roster.class);
 
     public Roster(List<ServerIdentity> servers) {
         nodes.addAll(servers);
@@ -61,9 +102,180 @@ public class Roster {
         return r.build();
     }
 
+    /**
+     * Sends the message to the roster and waits for the reply. Read-only requests are only spread
+     * over all nodes if a NodeSelector is set, see sendMessageAsync.
+     *
+     * @param path  the path of the service, e.g. "Skipchain/GetSingleBlock"
+     * @param proto the message to send
+     * @return the reply
+     * @throws CothorityCommunicationException if the request failed on all nodes it has been sent to
+     */
     public ByteString sendMessage(String path, com.google.protobuf.GeneratedMessageV3 proto) throws CothorityCommunicationException {
-        // TODO - fetch a random node.
-        return ByteString.copyFrom(nodes.get(0).SendMessage(path, proto.toByteArray()));
+        return ConnectionPool.await(sendMessageAsync(path, proto));
+    }
+
+    /**
+     * Sends the message to the roster without waiting for the reply.
+     * <p>
+     * Requests go to the leader, which is the first node of the roster. Only if a NodeSelector is
+     * set, read-only requests go to the node chosen by it instead. If that node cannot be reached or
+     * doesn't reply in time, the request is sent to the next node. If hedging is enabled, a
+     * read-only request that is idempotent is also sent to the next node once it takes longer than
+     * the given percentile of the latencies of the first node, and the first reply wins.
+     * <p>
+     * The other nodes may lag behind the leader by a block or more, so with a NodeSelector a
+     * read-only request can return an older state than the leader has. Use the variant with
+     * leaderOnly if the request must see the latest block of the leader.
+     *
+     * @param path  the path of the service, e.g. "Skipchain/GetSingleBlock"
+     * @param proto the message to send
+     * @return a future that completes with the reply, or with a CothorityCommunicationException
+     */
+    public CompletableFuture<ByteString> sendMessageAsync(String path, com.google.protobuf.GeneratedMessageV3 proto) {
+        return sendMessageAsync(path, proto, false);
+    }
+
+    /**
+     * Like sendMessageAsync, but can send read-only requests to the leader only even if a
+     * NodeSelector is set, so that they are not answered with the state of a node that lags
+     * behind. Such a request is neither spread over the roster nor sent to another node if the
+     * leader fails.
+     *
+     * @param path       the path of the service, e.g. "OmniLedger/GetProof"
+     * @param proto      the message to send
+     * @param leaderOnly whether read-only requests go to the leader, too
+     * @return a future that completes with the reply, or with a CothorityCommunicationException
+     */
+    public CompletableFuture<ByteString> sendMessageAsync(String path, com.google.protobuf.GeneratedMessageV3 proto,
+                                                          boolean leaderOnly) {
+        byte[] data = proto.toByteArray();
+        CompletableFuture<byte[]> reply;
+        NodeSelector sel = selector;
+        if (!leaderOnly && sel != null && readPaths.contains(path)) {
+            reply = sendRead(path, data, sel);
+        } else {
+            reply = nodes.get(0).sendMessageAsync(path, data);
+        }
+        return reply.thenApply(UnsafeByteOperations::unsafeWrap);
+    }
+
+    /**
+     * Sends a status request to all nodes in parallel and records the outcome in the HealthTracker.
+     *
+     * @return true only if all nodes replied
+     */
+    public boolean checkLiveness() {
+        byte[] request = StatusProto.Request.newBuilder().build().toByteArray();
+        List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+        for (ServerIdentity n : nodes) {
+            logger.info("Checking status of {}", n.getAddress());
+            checks.add(n.sendMessageAsync("Status/Request", request).handle((reply, e) -> {
+                if (e != null) {
+                    logger.warn("Failing node {}: {}", n.getAddress(), e.toString());
+                    return false;
+                }
+                return true;
+            }));
+        }
+        boolean ok = true;
+        for (CompletableFuture<Boolean> check : checks) {
+            ok &= check.join();
+        }
+        return ok;
+    }
+
+    /**
+     * Sets the strategy to choose the node for read-only requests. By default there is none, and
+     * read-only requests go to the leader like all other requests. With a strategy, they are
+     * spread over the roster and may return an older state, see sendMessageAsync.
+     *
+     * @param selector the new strategy, e.g. NodeSelector.RoundRobin, or null to send read-only
+     *                 requests to the leader again
+     */
+    public void setNodeSelector(NodeSelector selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * Enables hedging of idempotent read-only requests. This only has an effect if a NodeSelector
+     * is set.
+     *
+     * @param percentile the percentile of the latencies of a node after which the request is also
+     *                   sent to the next node, e.g. 95. 0 disables hedging.
+     */
+    public void setHedging(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        this.hedgePercentile = percentile;
+    }
+
+    private CompletableFuture<byte[]> sendRead(String path, byte[] data, NodeSelector selector) {
+        HealthTracker health = HealthTracker.getShared();
+        ReadRequest r = new ReadRequest(path, data, health.healthyFirst(selector.order(nodes, health)));
+        r.sendNext();
+        if (hedgePercentile > 0 && hedgePaths.contains(path) && r.order.size() > 1) {
+            long delay = health.get(r.order.get(0)).getPercentileNanos(hedgePercentile);
+            if (delay >= 0) {
+                hedger.schedule(() -> {
+                    if (!r.reply.isDone()) {
+                        logger.debug("hedging {}", path);
+                        r.sendNext();
+                    }
+                }, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+        return r.reply;
+    }
+
+    /**
+     * A read-only request that is sent to one node after the other until one of them replies.
+     */
+    private static final class ReadRequest {
+        private final String path;
+        private final byte[] data;
+        private final List<ServerIdentity> order;
+        private final CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        private int next;
+        private int pending;
+
+        private ReadRequest(String path, byte[] data, List<ServerIdentity> order) {
+            this.path = path;
+            this.data = data;
+            this.order = order;
+        }
+
+        private void sendNext() {
+            ServerIdentity si;
+            synchronized (this) {
+                if (next >= order.size()) {
+                    return;
+                }
+                si = order.get(next++);
+                pending++;
+            }
+            si.sendMessageAsync(path, data).whenComplete((buf, e) -> {
+                boolean failover;
+                boolean last;
+                synchronized (this) {
+                    pending--;
+                    failover = next < order.size();
+                    last = pending == 0 && !failover;
+                }
+                if (e == null) {
+                    reply.complete(buf);
+                } else if (!(e instanceof CothorityUnavailableException)) {
+                    // the service returned an error, another node will return the same.
+                    reply.completeExceptionally(e);
+                } else if (failover) {
+                    logger.warn("{} failed on {}, trying next node", path, si.getAddress());
+                    sendNext();
+                } else if (last) {
+                    reply.completeExceptionally(e);
+                }
+            });
+        }
     }
 
     public static Roster FromToml(String groupToml) {
@@ -3,21 +3,19 @@ package ch.epfl.dedis.lib;
 import ch.epfl.dedis.lib.crypto.Ed25519Point;
 import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTimeoutException;
+import ch.epfl.dedis.lib.exception.CothorityUnavailableException;
 import ch.epfl.dedis.proto.ServerIdentityProto;
 import ch.epfl.dedis.proto.StatusProto;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.moandjiezana.toml.Toml;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.handshake.ServerHandshake;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.xml.bind.DatatypeConverter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * dedis/lib
@@ -29,7 +27,6 @@ import java.util.concurrent.CountDownLatch;
 public class ServerIdentity {
     private final URI conodeAddress;
     public Point Public;
-    private final Logger logger = LoggerFactory.getLogger(ServerIdentity.class);
 
     public ServerIdentity(final URI serverWsAddress, final String publicKey) {
         this.conodeAddress = serverWsAddress;
@@ -53,8 +50,7 @@ public class ServerIdentity {
         StatusProto.Request request =
                 StatusProto.Request.newBuilder().build();
         try {
-            SyncSendMessage msg = new SyncSendMessage("Status/Request", request.toByteArray());
-            return StatusProto.Response.parseFrom(msg.response);
+            return StatusProto.Response.parseFrom(SendMessage("Status/Request", request.toByteArray()));
         } catch (InvalidProtocolBufferException e) {
             throw new CothorityCommunicationException(e.toString());
         }
@@ -72,78 +68,79 @@ public class ServerIdentity {
         return si.build();
     }
 
+    /**
+     * Sends a message to the service at the given path and waits for the reply. The connection
+     * is taken from the shared ConnectionPool and kept open for the next requests.
+     *
+     * @param path the path of the service, e.g. "Status/Request"
+     * @param data the serialized message
+     * @return the serialized reply
+     * @throws CothorityCommunicationException if the conode returns an error or cannot be reached
+     */
     public byte[] SendMessage(String path, byte[] data) throws CothorityCommunicationException {
-        SyncSendMessage ssm = new SyncSendMessage(path, data);
-        if (ssm.response == null){
-            throw new CothorityCommunicationException("Error while retrieving response - try again. Error-string is: " + ssm.error);
+        return ConnectionPool.await(sendMessageAsync(path, data));
+    }
+
+    /**
+     * Sends a message to the service at the given path without waiting for the reply. Multiple
+     * requests can be in flight at the same time, they share the connections of the
+     * ConnectionPool. The latency, failures and timeouts are recorded in the shared HealthTracker.
+     *
+     * @param path the path of the service, e.g. "Status/Request"
+     * @param data the serialized message
+     * @return a future that completes with the serialized reply, or with a
+     * CothorityCommunicationException if the conode returns an error, or a
+     * CothorityUnavailableException if it cannot be reached
+     */
+    public CompletableFuture<byte[]> sendMessageAsync(String path, byte[] data) {
+        try {
+            URI address = buildWebSocketAdddress(path);
+            NodeHealth health = HealthTracker.getShared().get(this);
+            long start = health.started();
+            CompletableFuture<byte[]> reply = ConnectionPool.getShared().send(address, data);
+            reply.whenComplete((r, e) -> {
+                if (e instanceof CothorityTimeoutException) {
+                    health.timedOut(start);
+                } else if (e instanceof CothorityUnavailableException) {
+                    health.failed(start);
+                } else {
+                    health.succeeded(start);
+                }
+            });
+            return reply;
+        } catch (URISyntaxException e) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new CothorityCommunicationException(e.toString()));
+            return failed;
         }
-        return ssm.response.array();
     }
 
+    /**
+     * Blocking request that stores the reply or the error. Kept for compatibility, new code should
+     * use SendMessage or sendMessageAsync.
+     */
+    @Deprecated
     public class SyncSendMessage {
         public ByteBuffer response;
         public String error;
 
         public SyncSendMessage(String path, byte[] msg) throws CothorityCommunicationException {
-            final CountDownLatch statusLatch = new CountDownLatch(1);
             try {
-                WebSocketClient ws = new WebSocketClient(buildWebSocketAdddress(path)) {
-                    @Override
-                    public void onMessage(String msg) {
-                        error = "This should never happen:" + msg;
-                        statusLatch.countDown();
-                    }
-
-                    @Override
-                    public void onMessage(ByteBuffer message) {
-                        response = message;
-                        close();
-                        statusLatch.countDown();
-                    }
-
-                    @Override
-                    public void onOpen(ServerHandshake handshake) {
-                        this.send(msg);
-                    }
-
-                    @Override
-                    public void onClose(int code, String reason, boolean remote) {
-                        if (reason != "") {
-                            error = reason;
-                        }
-                        statusLatch.countDown();
-                    }
-
-                    @Override
-                    public void onError(Exception ex) {
-                        error = "Error: " + ex.toString();
-                        statusLatch.countDown();
-                    }
-                };
-
-                // open websocket and send message.
-                ws.connect();
-                // wait for error or message returned.
-                statusLatch.await();
-            } catch (InterruptedException e) {
-                throw new CothorityCommunicationException(e.toString());
-            } catch (URISyntaxException e) {
-                throw new CothorityCommunicationException(e.toString());
-            }
-            if (error != null) {
-                logger.error("error: {}", error);
-                throw new CothorityCommunicationException(error);
+                response = ByteBuffer.wrap(SendMessage(path, msg));
+            } catch (CothorityCommunicationException e) {
+                error = e.getMessage();
+                throw e;
             }
         }
+    }
 
-        private URI buildWebSocketAdddress(final String servicePath) throws URISyntaxException {
-            return new URI("ws",
-                    conodeAddress.getUserInfo(),
-                    conodeAddress.getHost(),
-                    conodeAddress.getPort() + 1, // client operation use higher port number
-                    servicePath.startsWith("/") ? servicePath : "/".concat(servicePath),
-                    conodeAddress.getQuery(),
-                    conodeAddress.getFragment());
-        }
+    private URI buildWebSocketAdddress(final String servicePath) throws URISyntaxException {
+        return new URI("ws",
+                conodeAddress.getUserInfo(),
+                conodeAddress.getHost(),
+                conodeAddress.getPort() + 1, // client operation use higher port number
+                servicePath.startsWith("/") ? servicePath : "/".concat(servicePath),
+                conodeAddress.getQuery(),
+                conodeAddress.getFragment());
     }
 }
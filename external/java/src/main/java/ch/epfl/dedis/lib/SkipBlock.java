@@ -2,11 +2,17 @@ package ch.epfl.dedis.lib;
 
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 import ch.epfl.dedis.lib.exception.CothorityException;
+import ch.epfl.dedis.lib.skipchain.ForwardLink;
+import ch.epfl.dedis.proto.ServerIdentityProto;
 import ch.epfl.dedis.proto.SkipBlockProto;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * SkipBlock is a wrapper around the protobuf SkipBlock class. It is mainly used to serialize the genesis block for
@@ -72,5 +78,44 @@ public class SkipBlock {
             throw new CothorityException(e);
         }
     }
-}
 
+    /**
+     * @return the forward links of this block, the link at position i
+     * jumping over 2^i blocks if the block has a height bigger than i
+     */
+    public List<ForwardLink> getForwardLinks() {
+        List<ForwardLink> ret = new ArrayList<>();
+        for (SkipBlockProto.ForwardLink fl : skipBlock.getForwardList()) {
+            ret.add(new ForwardLink(fl));
+        }
+        return ret;
+    }
+
+    /**
+     * Calculates the hash of the fixed fields of the block the same way the
+     * skipchain service does. The integer fields are not part of the hash,
+     * as the service cannot encode them.
+     *
+     * @return the hash that must be equal to the id of the block
+     */
+    public byte[] calculateHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (ByteString bl : skipBlock.getBacklinksList()) {
+                digest.update(bl.toByteArray());
+            }
+            for (ByteString v : skipBlock.getVerifiersList()) {
+                digest.update(v.toByteArray());
+            }
+            digest.update(skipBlock.getParent().toByteArray());
+            digest.update(skipBlock.getGenesis().toByteArray());
+            digest.update(skipBlock.getData().toByteArray());
+            for (ServerIdentityProto.ServerIdentity si : skipBlock.getRoster().getListList()) {
+                digest.update(si.getPublic().toByteArray());
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package ch.epfl.dedis.lib.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * dedis/lib
+ * CoSi.java
+ * Purpose: Verifies collective signatures as created by the ftcosi-protocol of the conodes. A
+ * signature is the aggregate commitment V, the aggregate response r and a bit-mask of the nodes
+ * that took part in the signature. It is valid if r * B = V + k * A, where A is the sum of the
+ * public keys of the participating nodes and k = H(V | A | msg).
+ */
+public class CoSi {
+    private static final int pointLength = 32;
+    private static final int scalarLength = 32;
+
+    /**
+     * Verifies a collective signature.
+     *
+     * @param publics   the public keys of the roster, in the order of the roster
+     * @param msg       the signed message
+     * @param sig       the signature: commitment, response and participation mask
+     * @param threshold how many nodes must have taken part
+     * @return true if the signature is correct and enough nodes took part
+     */
+    public static boolean verify(List<Point> publics, byte[] msg, byte[] sig, int threshold) {
+        int maskLength = (publics.size() + 7) / 8;
+        if (sig.length != pointLength + scalarLength + maskLength) {
+            return false;
+        }
+        byte[] mask = Arrays.copyOfRange(sig, pointLength + scalarLength, sig.length);
+        Point aggregate = null;
+        int participants = 0;
+        for (int i = 0; i < publics.size(); i++) {
+            if ((mask[i >> 3] & (1 << (i & 7))) != 0) {
+                aggregate = aggregate == null ? publics.get(i) : aggregate.add(publics.get(i));
+                participants++;
+            }
+        }
+        if (aggregate == null || participants < threshold) {
+            return false;
+        }
+
+        byte[] commitment = Arrays.copyOfRange(sig, 0, pointLength);
+        Point v;
+        try {
+            v = new Ed25519Point(commitment);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        Scalar r = new Ed25519Scalar(Arrays.copyOfRange(sig, pointLength, pointLength + scalarLength));
+        Scalar k = challenge(commitment, aggregate, msg);
+        // r * B - k * A = V, with both multiplications sharing their doublings.
+        Point rk = Ed25519Point.multiScalarMul(Arrays.asList(r, k.negate()),
+                Arrays.asList(Ed25519Point.base(), aggregate));
+        return rk.equals(v);
+    }
+
+    /**
+     * @param n the number of nodes in the roster
+     * @return the number of nodes that must sign so that the signature is accepted by the conodes
+     */
+    public static int threshold(int n) {
+        return n - (n - 1) / 3;
+    }
+
+    /**
+     * @return the challenge of the signature, H(V | A | msg).
+     */
+    static Scalar challenge(byte[] commitment, Point aggregate, byte[] msg) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-512");
+            digest.update(commitment);
+            digest.update(aggregate.toBytes());
+            digest.update(msg);
+            return new Ed25519Scalar(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
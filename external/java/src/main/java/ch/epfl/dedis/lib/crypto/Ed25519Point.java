@@ -11,11 +11,15 @@ import org.slf4j.LoggerFactory;
 import javax.xml.bind.DatatypeConverter;
 import java.security.PublicKey;
 import java.util.Arrays;
+import java.util.List;
 
 public class Ed25519Point implements Point {
     private final static Logger logger = LoggerFactory.getLogger(Ed25519Point.class);
 
     private GroupElement element;
+    // the tables are taken from PointTables the first time they are needed.
+    private volatile GroupElement fixedBase;
+    private volatile GroupElement[] oddMultiples;
 
     public Ed25519Point(ByteString pub) {
         this(pub.toByteArray());
@@ -50,9 +54,20 @@ public class Ed25519Point implements Point {
     }
 
     public Point mul(Scalar s) {
-        element = element.toP3();
-        element.precompute(true);
-        return new Ed25519Point(element.scalarMultiply(s.getLittleEndian()));
+        return mul(s, false);
+    }
+
+    /**
+     * Like mul, but the table of the point can be kept in PointTables, so that other copies of the
+     * point don't need to calculate it again.
+     *
+     * @param s        the scalar
+     * @param remember if true, the table is kept in PointTables. This should only be done for points
+     *                 that are used often, like public keys.
+     * @return the product of the scalar and this point
+     */
+    public Point mul(Scalar s, boolean remember) {
+        return new Ed25519Point(fixedBase(remember).scalarMultiply(s.getLittleEndian()));
     }
 
     public Point add(Point other) {
@@ -122,7 +137,124 @@ public class Ed25519Point implements Point {
         return Ed25519.base;
     }
 
-    private static Ed25519Point convert(Point p) {
+    /**
+     * Calculates s_0 * p_0 + s_1 * p_1 + ... with all doublings shared between the points. This
+     * runs in variable time and must only be used with public scalars, e.g. to verify signatures.
+     *
+     * @param scalars the scalars, reduced modulo the prime order
+     * @param points  the points, in the same order as the scalars
+     * @return the sum of all products
+     */
+    public static Point multiScalarMul(List<Scalar> scalars, List<Point> points) {
+        if (scalars.size() != points.size()) {
+            throw new IllegalArgumentException("need as many scalars as points");
+        }
+        byte[][] s = new byte[scalars.size()][];
+        GroupElement[][] tables = new GroupElement[points.size()][];
+        for (int j = 0; j < s.length; j++) {
+            s[j] = scalars.get(j).getLittleEndian();
+            tables[j] = convert(points.get(j)).oddMultiples(false);
+        }
+        return new Ed25519Point(multiScalarMul(s, tables));
+    }
+
+    /**
+     * Like multiScalarMul above, but with the scalars as little-endian bytes and the points as
+     * their odd multiples.
+     *
+     * @return the sum in P1P1 representation
+     */
+    static GroupElement multiScalarMul(byte[][] scalars, GroupElement[][] tables) {
+        byte[][] digits = new byte[scalars.length][];
+        int top = -1;
+        for (int j = 0; j < scalars.length; j++) {
+            digits[j] = slide(scalars[j]);
+            for (int i = 255; i > top; i--) {
+                if (digits[j][i] != 0) {
+                    top = i;
+                }
+            }
+        }
+
+        GroupElement t = Ed25519.curve.getZero(GroupElement.Representation.P2).dbl();
+        for (int i = top; i >= 0; i--) {
+            t = t.toP2().dbl();
+            for (int j = 0; j < scalars.length; j++) {
+                int d = digits[j][i];
+                if (d > 0) {
+                    t = t.toP3().add(tables[j][d / 2]);
+                } else if (d < 0) {
+                    t = t.toP3().sub(tables[j][-d / 2]);
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @param remember if true, the table is kept in PointTables. This should only be done for points
+     *                 that are used often, like public keys.
+     * @return this point with its table for the constant-time multiplication of mul
+     */
+    GroupElement fixedBase(boolean remember) {
+        if (fixedBase == null) {
+            fixedBase = remember ? PointTables.fixedBase(toProto(), element) :
+                    PointTables.calculateFixedBase(element);
+        }
+        return fixedBase;
+    }
+
+    /**
+     * @param remember if true, the table is kept in PointTables. This should only be done for points
+     *                 that are used often, like public keys.
+     * @return the odd multiples of this point for multiScalarMul
+     */
+    GroupElement[] oddMultiples(boolean remember) {
+        if (oddMultiples == null) {
+            oddMultiples = remember ? PointTables.oddMultiples(toProto(), element) :
+                    PointTables.calculateOddMultiples(element);
+        }
+        return oddMultiples;
+    }
+
+    /**
+     * Recodes a scalar in signed digits in [-15, 15], where only odd digits are not zero and every
+     * non-zero digit is followed by at least four zeros.
+     */
+    private static byte[] slide(byte[] a) {
+        byte[] r = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            r[i] = (byte) (1 & (a[i >> 3] >> (i & 7)));
+        }
+        for (int i = 0; i < 256; i++) {
+            if (r[i] == 0) {
+                continue;
+            }
+            for (int b = 1; b <= 6 && i + b < 256; b++) {
+                if (r[i + b] == 0) {
+                    continue;
+                }
+                if (r[i] + (r[i + b] << b) <= 15) {
+                    r[i] += r[i + b] << b;
+                    r[i + b] = 0;
+                } else if (r[i] - (r[i + b] << b) >= -15) {
+                    r[i] -= r[i + b] << b;
+                    for (int k = i + b; k < 256; k++) {
+                        if (r[k] == 0) {
+                            r[k] = 1;
+                            break;
+                        }
+                        r[k] = 0;
+                    }
+                } else {
+                    break;
+                }
+            }
+        }
+        return r;
+    }
+
+    static Ed25519Point convert(Point p) {
         if (!(p instanceof Ed25519Point)) {
             throw new IllegalArgumentException(String.format("Error thrown because you are trying to operate an Ed25519Point with a Point implementing class %s", p.getClass().getName()));
         }
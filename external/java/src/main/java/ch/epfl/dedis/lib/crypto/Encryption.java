@@ -30,7 +30,8 @@ public class Encryption {
             iv = new byte[ivLength];
             System.arraycopy(keyMaterial, 0, iv, 0, ivLength);
             ivSpec = new IvParameterSpec(iv);
-            symmetricKey = new byte[keyMaterial.length - ivLength];
+            symmetricKey = new byte[symmetricLength];
+            System.arraycopy(keyMaterial, ivLength, symmetricKey, 0, symmetricLength);
             keySpec = new SecretKeySpec(symmetricKey, algoKey);
         }
 
@@ -94,9 +95,32 @@ public class Encryption {
      */
     public static byte[] decryptData(byte[] dataEnc, byte[] keyMaterial) throws CothorityCryptoException{
         keyIv key = new keyIv(keyMaterial);
+        return decrypt(dataEnc, key.keySpec, key.ivSpec);
+    }
+
+    /**
+     * Decrypts data that has been encrypted by a version of this class that
+     * didn't take the symmetric key from the keyMaterial, but used an all-zero
+     * key of the same length. Only the iv of the keyMaterial is used.
+     * <p>
+     * There is no marker telling the two formats apart, so the caller has to
+     * know that the data is of the old format.
+     *
+     * @param dataEnc the encrypted data from the skipchain
+     * @param keyMaterial the decrypted keyMaterial
+     * @return decrypted data
+     * @throws CothorityCryptoException if the data cannot be decrypted
+     */
+    public static byte[] decryptDataLegacy(byte[] dataEnc, byte[] keyMaterial) throws CothorityCryptoException{
+        keyIv key = new keyIv(keyMaterial);
+        SecretKeySpec zeroKey = new SecretKeySpec(new byte[key.symmetricKey.length], algoKey);
+        return decrypt(dataEnc, zeroKey, key.ivSpec);
+    }
+
+    private static byte[] decrypt(byte[] dataEnc, SecretKeySpec keySpec, IvParameterSpec ivSpec) throws CothorityCryptoException{
         try {
             Cipher cipher = Cipher.getInstance(algo);
-            cipher.init(Cipher.DECRYPT_MODE, key.keySpec, key.ivSpec);
+            cipher.init(Cipher.DECRYPT_MODE, keySpec, ivSpec);
             return cipher.doFinal(dataEnc);
         } catch (NoSuchAlgorithmException e){
             throw new CothorityCryptoException(e.getMessage());
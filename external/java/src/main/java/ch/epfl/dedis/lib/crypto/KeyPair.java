@@ -1,14 +1,17 @@
 package ch.epfl.dedis.lib.crypto;
 
-import java.util.Random;
+import java.security.SecureRandom;
 
 public class KeyPair {
+    // SecureRandom is thread-safe, so all key pairs share one.
+    private static final SecureRandom random = new SecureRandom();
+
     public Scalar scalar;
     public Point point;
 
     public KeyPair() {
         byte[] seed = new byte[Ed25519.field.getb() / 8];
-        new Random().nextBytes(seed);
+        random.nextBytes(seed);
         scalar = new Ed25519Scalar(seed);
         point = Ed25519Point.base().mul(scalar);
     }
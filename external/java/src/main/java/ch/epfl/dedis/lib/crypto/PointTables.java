@@ -0,0 +1,81 @@
+package ch.epfl.dedis.lib.crypto;
+
+import com.google.protobuf.ByteString;
+import net.i2p.crypto.eddsa.math.GroupElement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * dedis/lib
+ * PointTables.java
+ * Purpose: Keeps the precomputed tables of the points that are used most often, e.g. the public
+ * keys of the roster, so that they are not calculated again for every multiplication.
+ */
+final class PointTables {
+    // a fixed-base table has 256 points, a table of odd multiples only 8.
+    private static final int maxFixedBase = 64;
+    private static final int maxOddMultiples = 1024;
+
+    private static final Map<ByteString, GroupElement> fixedBase = lru(maxFixedBase);
+    private static final Map<ByteString, GroupElement[]> oddMultiples = lru(maxOddMultiples);
+
+    private PointTables() {
+    }
+
+    /**
+     * @return the point with its table for constant-time multiplication
+     */
+    static GroupElement fixedBase(ByteString key, GroupElement e) {
+        return get(fixedBase, key, k -> calculateFixedBase(e));
+    }
+
+    static GroupElement calculateFixedBase(GroupElement e) {
+        GroupElement p3 = e.toP3();
+        p3.precompute(true);
+        return p3;
+    }
+
+    /**
+     * @return P, 3P, 5P, ..., 15P for the variable-time multi-scalar multiplication
+     */
+    static GroupElement[] oddMultiples(ByteString key, GroupElement e) {
+        return get(oddMultiples, key, k -> calculateOddMultiples(e));
+    }
+
+    static GroupElement[] calculateOddMultiples(GroupElement e) {
+        GroupElement[] ret = new GroupElement[8];
+        GroupElement p3 = e.toP3();
+        GroupElement twice = p3.dbl().toP3();
+        ret[0] = p3.toCached();
+        for (int i = 1; i < ret.length; i++) {
+            ret[i] = twice.add(ret[i - 1]).toP3().toCached();
+        }
+        return ret;
+    }
+
+    private static <V> V get(Map<ByteString, V> cache, ByteString key, Function<ByteString, V> calculate) {
+        synchronized (cache) {
+            V v = cache.get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        // calculated outside of the lock, two threads might calculate the same table.
+        V v = calculate.apply(key);
+        synchronized (cache) {
+            cache.put(key, v);
+        }
+        return v;
+    }
+
+    private static <V> Map<ByteString, V> lru(int size) {
+        return new LinkedHashMap<ByteString, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteString, V> eldest) {
+                return size() > size;
+            }
+        };
+    }
+}
@@ -1,20 +1,44 @@
 package ch.epfl.dedis.lib.crypto;
 
 import ch.epfl.dedis.proto.SkipBlockProto;
+import net.i2p.crypto.eddsa.math.GroupElement;
+import net.i2p.crypto.eddsa.math.ScalarOps;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class SchnorrSig {
+    private static final ScalarOps ops = Ed25519.ed25519.getScalarOps();
+    private static final byte[] zero = new byte[32];
+    private static final byte[] orderMinusOne = new Ed25519Scalar(
+            "ECD3F55C1A631258D69CF7A2DEF9DE1400000000000000000000000000000010", false).getLittleEndian();
+    private static final byte[] identity = Ed25519.curve.getZero(GroupElement.Representation.P3).toByteArray();
+    // the random factors of the batch verification are 128 bits long.
+    private static final int factorLength = 16;
+    private static final SecureRandom random = new SecureRandom();
+
     public Point challenge;
     public Scalar response;
 
     public SchnorrSig(byte[] msg, Scalar priv) {
+        this(msg, priv, Ed25519Point.base().mul(priv));
+    }
+
+    /**
+     * Signs the message with a known public key, which saves calculating it from the private key.
+     *
+     * @param msg  the message to sign
+     * @param priv the private key
+     * @param pub  the public key belonging to priv
+     */
+    public SchnorrSig(byte[] msg, Scalar priv, Point pub) {
         KeyPair kp = new KeyPair();
         challenge = kp.point;
 
-        Point pub = Ed25519Point.base().mul(priv);
         Scalar xh = priv.mul(toHash(challenge, pub, msg));
         response = kp.scalar.add(xh);
     }
@@ -24,12 +48,90 @@ public class SchnorrSig {
         response = new Ed25519Scalar(Arrays.copyOfRange(data, 32, 64));
     }
 
+    /**
+     * Verifies the signature by checking that response * B - hash * pub is equal to the challenge,
+     * using the cached table of the public key.
+     *
+     * @param msg the signed message
+     * @param pub the public key of the signer
+     * @return true if the signature is correct
+     */
     public boolean verify(byte[] msg, Point pub) {
         Scalar hash = toHash(challenge, pub, msg);
-        Point S = Ed25519Point.base().mul(response);
-        Point Ah = pub.mul(hash);
-        Point RAs = challenge.add(Ah);
-        return S.equals(RAs);
+        byte[][] scalars = {response.reduce().getLittleEndian(), negate(hash.getLittleEndian())};
+        GroupElement[][] tables = {Ed25519Point.convert(Ed25519Point.base()).oddMultiples(true),
+                Ed25519Point.convert(pub).oddMultiples(true)};
+        byte[] RAs = Ed25519Point.multiScalarMul(scalars, tables).toByteArray();
+        return Arrays.equals(RAs, challenge.toBytes());
+    }
+
+    /**
+     * Verifies many signatures at once. All signatures are checked together in one random linear
+     * combination, which is much faster than verifying them one by one. If the combination doesn't
+     * hold, every signature is verified on its own to find the wrong ones.
+     * <p>
+     * The combination is multiplied by the cofactor, so it accepts every signature accepted by
+     * verify. It would also accept a signature that is only off by a point of small order, which
+     * only the owner of the private key can create.
+     *
+     * @param msgs the signed messages
+     * @param pubs the public keys of the signers
+     * @param sigs the signatures
+     * @return the indexes of the signatures that are wrong, empty if all signatures are correct
+     */
+    public static List<Integer> verifyBatch(List<byte[]> msgs, List<Point> pubs, List<SchnorrSig> sigs) {
+        if (msgs.size() != sigs.size() || pubs.size() != sigs.size()) {
+            throw new IllegalArgumentException("need as many messages and public keys as signatures");
+        }
+        List<Integer> wrong = new ArrayList<>();
+        if (sigs.isEmpty() || combinationHolds(msgs, pubs, sigs)) {
+            return wrong;
+        }
+        for (int i = 0; i < sigs.size(); i++) {
+            if (!sigs.get(i).verify(msgs.get(i), pubs.get(i))) {
+                wrong.add(i);
+            }
+        }
+        return wrong;
+    }
+
+    /**
+     * Checks that 8 * (sum(z_i * s_i) * B - sum(z_i * R_i) - sum(z_i * h_i * A_i)) is the identity
+     * for random z_i.
+     */
+    private static boolean combinationHolds(List<byte[]> msgs, List<Point> pubs, List<SchnorrSig> sigs) {
+        int n = sigs.size();
+        byte[][] scalars = new byte[2 * n + 1][];
+        GroupElement[][] tables = new GroupElement[2 * n + 1][];
+        byte[] sum = zero;
+        for (int i = 0; i < n; i++) {
+            SchnorrSig sig = sigs.get(i);
+            byte[] z = new byte[32];
+            random.nextBytes(z);
+            Arrays.fill(z, factorLength, z.length, (byte) 0);
+            byte[] h = sig.toHash(sig.challenge, pubs.get(i), msgs.get(i)).getLittleEndian();
+            sum = ops.multiplyAndAdd(z, sig.response.reduce().getLittleEndian(), sum);
+
+            scalars[2 * i + 1] = negate(z);
+            tables[2 * i + 1] = Ed25519Point.convert(sig.challenge).oddMultiples(false);
+            scalars[2 * i + 2] = negate(ops.multiplyAndAdd(z, h, zero));
+            tables[2 * i + 2] = Ed25519Point.convert(pubs.get(i)).oddMultiples(true);
+        }
+        scalars[0] = sum;
+        tables[0] = Ed25519Point.convert(Ed25519Point.base()).oddMultiples(true);
+
+        GroupElement r = Ed25519Point.multiScalarMul(scalars, tables);
+        for (int i = 0; i < 3; i++) {
+            r = r.toP2().dbl();
+        }
+        return Arrays.equals(r.toByteArray(), identity);
+    }
+
+    /**
+     * @return -s modulo the prime order
+     */
+    private static byte[] negate(byte[] s) {
+        return ops.multiplyAndAdd(s, orderMinusOne, zero);
     }
 
     public byte[] toBytes() {
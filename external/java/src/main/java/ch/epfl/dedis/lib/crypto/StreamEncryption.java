@@ -0,0 +1,368 @@
+package ch.epfl.dedis.lib.crypto;
+
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import com.google.protobuf.ByteString;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * dedis/lib
+ * StreamEncryption.java
+ * Purpose: Encrypts data of any size without holding it in memory. The data is cut in chunks
+ * of a fixed size and every chunk is encrypted with AES/GCM, so that a range of the data can be
+ * decrypted without decrypting everything before it. The encrypted data is a header, holding
+ * a marker, the chunk size and a random nonce-prefix, followed by the encrypted chunks. The
+ * nonce of a chunk is the prefix and the index of the chunk, and the last chunk is marked as
+ * such, so that chunks cannot be reordered, dropped or cut off without being detected.
+ * <p>
+ * The key is the part of the key material after the first Encryption.ivLength bytes, the
+ * rest of the key material is not used.
+ */
+public class StreamEncryption {
+    public static final int defaultChunkSize = 64 * 1024;
+    // the biggest chunk size that is accepted, the chunk size in a header cannot be trusted
+    public static final int maxChunkSize = 16 * 1024 * 1024;
+    public static final int tagLength = 16;
+    private static final byte[] marker = {'d', 'e', 'd', 'c', 1};
+    private static final int prefixLength = 8;
+    public static final int headerLength = marker.length + 4 + prefixLength;
+    private static final String algo = "AES/GCM/NoPadding";
+    private static final SecureRandom random = new SecureRandom();
+
+    /**
+     * Encrypts everything read from in and writes it to out, using chunks of the default size.
+     *
+     * @param in          the data to encrypt, it is read until its end but not closed
+     * @param out         where the encrypted data is written to, it is not closed
+     * @param keyMaterial the key material as created by Encryption.keyIv
+     * @throws IOException              if in or out fail
+     * @throws CothorityCryptoException if the key material is not usable
+     */
+    public static void encrypt(InputStream in, OutputStream out, byte[] keyMaterial)
+            throws IOException, CothorityCryptoException {
+        encrypt(in, out, keyMaterial, defaultChunkSize);
+    }
+
+    /**
+     * Encrypts everything read from in and writes it to out.
+     *
+     * @param in          the data to encrypt, it is read until its end but not closed
+     * @param out         where the encrypted data is written to, it is not closed
+     * @param keyMaterial the key material as created by Encryption.keyIv
+     * @param chunkSize   how many bytes of data go into one chunk, at most maxChunkSize
+     * @throws IOException              if in or out fail
+     * @throws CothorityCryptoException if the key material is not usable
+     */
+    public static void encrypt(InputStream in, OutputStream out, byte[] keyMaterial, int chunkSize)
+            throws IOException, CothorityCryptoException {
+        if (chunkSize <= 0 || chunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("chunk size must be positive and at most " + maxChunkSize);
+        }
+        byte[] prefix = new byte[prefixLength];
+        random.nextBytes(prefix);
+        Chunks chunks = new Chunks(keyMaterial, chunkSize, prefix);
+        out.write(chunks.header());
+
+        byte[] current = new byte[chunkSize];
+        byte[] next = new byte[chunkSize];
+        byte[] enc = new byte[chunkSize + tagLength];
+        int length = readFully(in, current);
+        for (long index = 0; ; index++) {
+            // a full chunk is only the last one if nothing follows.
+            int nextLength = length == chunkSize ? readFully(in, next) : 0;
+            boolean last = nextLength == 0;
+            out.write(enc, 0, chunks.encrypt(index, last, current, length, enc));
+            if (last) {
+                return;
+            }
+            byte[] tmp = current;
+            current = next;
+            next = tmp;
+            length = nextLength;
+        }
+    }
+
+    /**
+     * Decrypts everything read from in and writes it to out. Nothing of a chunk is written before
+     * the chunk has been authenticated.
+     *
+     * @param in          the encrypted data, it is read until its end but not closed
+     * @param out         where the decrypted data is written to, it is not closed
+     * @param keyMaterial the key material used for the encryption
+     * @throws IOException              if in or out fail
+     * @throws CothorityCryptoException if the data has been changed or the key material is wrong
+     */
+    public static void decrypt(InputStream in, OutputStream out, byte[] keyMaterial)
+            throws IOException, CothorityCryptoException {
+        byte[] header = new byte[headerLength];
+        if (readFully(in, header) != headerLength) {
+            throw new CothorityCryptoException("encrypted data is too short");
+        }
+        Chunks chunks = Chunks.fromHeader(keyMaterial, header);
+
+        byte[] current = new byte[chunks.encryptedChunkSize()];
+        byte[] next = new byte[chunks.encryptedChunkSize()];
+        byte[] plain = new byte[chunks.chunkSize];
+        int length = readFully(in, current);
+        for (long index = 0; ; index++) {
+            int nextLength = length == current.length ? readFully(in, next) : 0;
+            boolean last = nextLength == 0;
+            out.write(plain, 0, chunks.decrypt(index, last, current, length, plain));
+            if (last) {
+                return;
+            }
+            byte[] tmp = current;
+            current = next;
+            next = tmp;
+            length = nextLength;
+        }
+    }
+
+    /**
+     * Encrypts the rest of the file in, starting at its current position, and writes it to out.
+     *
+     * @param in          the file to encrypt
+     * @param out         the file for the encrypted data
+     * @param keyMaterial the key material as created by Encryption.keyIv
+     * @param chunkSize   how many bytes of data go into one chunk
+     * @throws IOException              if one of the files fails
+     * @throws CothorityCryptoException if the key material is not usable
+     */
+    public static void encrypt(FileChannel in, FileChannel out, byte[] keyMaterial, int chunkSize)
+            throws IOException, CothorityCryptoException {
+        encrypt(Channels.newInputStream(in), Channels.newOutputStream(out), keyMaterial, chunkSize);
+    }
+
+    /**
+     * Decrypts a range of the data in an encrypted file. Only the chunks covering the range are read.
+     *
+     * @param in          the file with the encrypted data
+     * @param from        the position of the first byte of the decrypted data to return
+     * @param length      how many bytes to return. Fewer bytes are returned if the data ends before.
+     * @param out         where the decrypted range is written to
+     * @param keyMaterial the key material used for the encryption
+     * @throws IOException              if the file or out fail
+     * @throws CothorityCryptoException if the data has been changed or the key material is wrong
+     */
+    public static void decrypt(FileChannel in, long from, long length, OutputStream out, byte[] keyMaterial)
+            throws IOException, CothorityCryptoException {
+        decrypt(new Source() {
+            @Override
+            public long size() throws IOException {
+                return in.size();
+            }
+
+            @Override
+            public void read(long position, byte[] buf, int length) throws IOException {
+                ByteBuffer bb = ByteBuffer.wrap(buf, 0, length);
+                while (bb.hasRemaining()) {
+                    if (in.read(bb, position + bb.position()) < 0) {
+                        throw new IOException("file ends early");
+                    }
+                }
+            }
+        }, from, length, out, keyMaterial);
+    }
+
+    /**
+     * Decrypts a range of encrypted data that is held in a ByteString, e.g. the data of a write request.
+     *
+     * @param in          the encrypted data
+     * @param from        the position of the first byte of the decrypted data to return
+     * @param length      how many bytes to return. Fewer bytes are returned if the data ends before.
+     * @param out         where the decrypted range is written to
+     * @param keyMaterial the key material used for the encryption
+     * @throws IOException              if out fails
+     * @throws CothorityCryptoException if the data has been changed or the key material is wrong
+     */
+    public static void decrypt(ByteString in, long from, long length, OutputStream out, byte[] keyMaterial)
+            throws IOException, CothorityCryptoException {
+        decrypt(new Source() {
+            @Override
+            public long size() {
+                return in.size();
+            }
+
+            @Override
+            public void read(long position, byte[] buf, int length) {
+                in.copyTo(buf, (int) position, 0, length);
+            }
+        }, from, length, out, keyMaterial);
+    }
+
+    /**
+     * @param data some encrypted data
+     * @return true if the data starts with the header written by this class
+     */
+    public static boolean isStreamEncrypted(ByteString data) {
+        return data.size() >= headerLength && data.substring(0, marker.length).equals(ByteString.copyFrom(marker));
+    }
+
+    /**
+     * @param length    the length of the data to encrypt
+     * @param chunkSize how many bytes of data go into one chunk
+     * @return the length of the encrypted data
+     */
+    public static long encryptedLength(long length, int chunkSize) {
+        // empty data still has one, empty, chunk.
+        long chunks = Math.max(1, (length + chunkSize - 1) / chunkSize);
+        return headerLength + length + chunks * tagLength;
+    }
+
+    private static void decrypt(Source in, long from, long length, OutputStream out, byte[] keyMaterial)
+            throws IOException, CothorityCryptoException {
+        if (from < 0 || length < 0) {
+            throw new IllegalArgumentException("negative range");
+        }
+        long size = in.size();
+        if (size < headerLength + tagLength) {
+            throw new CothorityCryptoException("encrypted data is too short");
+        }
+        byte[] header = new byte[headerLength];
+        in.read(0, header, headerLength);
+        Chunks chunks = Chunks.fromHeader(keyMaterial, header);
+
+        long body = size - headerLength;
+        int encChunk = chunks.encryptedChunkSize();
+        long count = (body + encChunk - 1) / encChunk;
+        long plainLength = body - count * tagLength;
+        if (body % encChunk != 0 && body % encChunk < tagLength) {
+            throw new CothorityCryptoException("encrypted data has been cut");
+        }
+        long end = Math.min(plainLength, from + length);
+        if (from >= end) {
+            return;
+        }
+
+        byte[] enc = new byte[encChunk];
+        byte[] plain = new byte[chunks.chunkSize];
+        for (long index = from / chunks.chunkSize; index * chunks.chunkSize < end; index++) {
+            long position = headerLength + index * encChunk;
+            int encLength = (int) Math.min(encChunk, size - position);
+            in.read(position, enc, encLength);
+            int plainLen = chunks.decrypt(index, index == count - 1, enc, encLength, plain);
+            long chunkStart = index * chunks.chunkSize;
+            int off = (int) Math.max(0, from - chunkStart);
+            int to = (int) Math.min(plainLen, end - chunkStart);
+            out.write(plain, off, to - off);
+        }
+    }
+
+    /**
+     * Reads until buf is full or the stream ends.
+     *
+     * @return how many bytes have been read
+     */
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int read = 0;
+        while (read < buf.length) {
+            int r = in.read(buf, read, buf.length - read);
+            if (r < 0) {
+                break;
+            }
+            read += r;
+        }
+        return read;
+    }
+
+    /**
+     * Gives random access to encrypted data.
+     */
+    private interface Source {
+        long size() throws IOException;
+
+        void read(long position, byte[] buf, int length) throws IOException;
+    }
+
+    /**
+     * Encrypts and decrypts single chunks.
+     */
+    private static final class Chunks {
+        private final SecretKeySpec key;
+        private final int chunkSize;
+        private final byte[] prefix;
+        private final Cipher cipher;
+
+        private Chunks(byte[] keyMaterial, int chunkSize, byte[] prefix) throws CothorityCryptoException {
+            // the key material is laid out like the one of Encryption.keyIv: the iv first, then the key
+            if (keyMaterial.length <= Encryption.ivLength) {
+                throw new CothorityCryptoException("too short symmetricKey material");
+            }
+            this.key = new SecretKeySpec(Arrays.copyOfRange(keyMaterial, Encryption.ivLength, keyMaterial.length),
+                    Encryption.algoKey);
+            this.chunkSize = chunkSize;
+            this.prefix = prefix;
+            try {
+                cipher = Cipher.getInstance(algo);
+            } catch (GeneralSecurityException e) {
+                throw new CothorityCryptoException(e.getMessage(), e);
+            }
+        }
+
+        private static Chunks fromHeader(byte[] keyMaterial, byte[] header) throws CothorityCryptoException {
+            if (!Arrays.equals(marker, Arrays.copyOfRange(header, 0, marker.length))) {
+                throw new CothorityCryptoException("not stream-encrypted data");
+            }
+            int chunkSize = ByteBuffer.wrap(header, marker.length, 4).getInt();
+            // the buffers of a chunk are allocated before anything is authenticated
+            if (chunkSize <= 0 || chunkSize > maxChunkSize) {
+                throw new CothorityCryptoException("wrong chunk size in header");
+            }
+            return new Chunks(keyMaterial, chunkSize, Arrays.copyOfRange(header, marker.length + 4, headerLength));
+        }
+
+        private byte[] header() {
+            return ByteBuffer.allocate(headerLength).put(marker).putInt(chunkSize).put(prefix).array();
+        }
+
+        private int encryptedChunkSize() {
+            return chunkSize + tagLength;
+        }
+
+        private int encrypt(long index, boolean last, byte[] plain, int length, byte[] enc)
+                throws CothorityCryptoException {
+            try {
+                init(Cipher.ENCRYPT_MODE, index, last);
+                return cipher.doFinal(plain, 0, length, enc, 0);
+            } catch (GeneralSecurityException e) {
+                throw new CothorityCryptoException(e.getMessage(), e);
+            }
+        }
+
+        private int decrypt(long index, boolean last, byte[] enc, int length, byte[] plain)
+                throws CothorityCryptoException {
+            if (length < tagLength) {
+                throw new CothorityCryptoException("encrypted data has been cut");
+            }
+            try {
+                init(Cipher.DECRYPT_MODE, index, last);
+                return cipher.doFinal(enc, 0, length, plain, 0);
+            } catch (AEADBadTagException e) {
+                throw new CothorityCryptoException("chunk " + index + " has been changed", e);
+            } catch (GeneralSecurityException e) {
+                throw new CothorityCryptoException(e.getMessage(), e);
+            }
+        }
+
+        private void init(int mode, long index, boolean last) throws GeneralSecurityException {
+            if (index > Integer.MAX_VALUE) {
+                throw new GeneralSecurityException("too many chunks");
+            }
+            byte[] nonce = ByteBuffer.allocate(prefixLength + 4).put(prefix).putInt((int) index).array();
+            cipher.init(mode, key, new GCMParameterSpec(tagLength * 8, nonce));
+            cipher.updateAAD(new byte[]{(byte) (last ? 1 : 0)});
+        }
+    }
+}
@@ -2,6 +2,8 @@ package ch.epfl.dedis.lib.eventlog;
 
 import ch.epfl.dedis.proto.EventLogProto;
 
+import java.util.Objects;
+
 /**
  * An instance of an Event can be sent and stored by OmniLedger.
  */
@@ -57,7 +59,12 @@ public final class Event {
         if (o == this) return true;
         if (!(o instanceof Event)) return false;
         Event e = (Event)o;
-        return e.when != this.when || e.topic.equals(this.topic) || e.content.equals(this.content);
+        return e.when == this.when && e.topic.equals(this.topic) && e.content.equals(this.content);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.when, this.topic, this.content);
     }
 
     @Override
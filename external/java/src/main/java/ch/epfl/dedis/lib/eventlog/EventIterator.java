@@ -0,0 +1,81 @@
+package ch.epfl.dedis.lib.eventlog;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * EventIterator goes through all events of a search range, in the order of their timestamps. The events are fetched
+ * page by page while they are consumed, and the next page is requested while the current one is being consumed. At
+ * most one page is fetched ahead, so a slow consumer doesn't fill up the memory.
+ * <p>
+ * If a page cannot be fetched, hasNext throws an EventSearchException with the CothorityException as its cause. The
+ * search can then be resumed from getCursor, also later on with a cursor stored with SearchCursor.toBytes.
+ * <p>
+ * If there are more events with the same timestamp than the service returns in a page, the events after the first
+ * page cannot be fetched and hasNext throws an EventSearchException. The timestamp is then the one of getCursor, and
+ * to skip the missing events, the search can be resumed with SearchCursor.of(topic, cursor.getFrom() + 1,
+ * cursor.getTo()).
+ */
+public interface EventIterator extends Iterator<Event> {
+    /**
+     * Fetcher sends one search request, like EventLogInstance.search.
+     */
+    interface Fetcher {
+        /**
+         * @param topic the topic to search, if it is an empty string, all topics are included
+         * @param from the start of the search range (inclusive)
+         * @param to the end of the search range (exclusive)
+         * @return a future that completes with the reply
+         */
+        CompletableFuture<SearchResponse> fetch(String topic, long from, long to);
+    }
+
+    /**
+     * @return the position after the last event returned by next, to resume the search later
+     */
+    SearchCursor getCursor();
+
+    /**
+     * @return the latency and event count of the pages fetched so far
+     */
+    SearchMetrics getMetrics();
+
+    /**
+     * @return a sequential stream of the remaining events
+     */
+    default Stream<Event> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Creates an iterator that fetches one page after the other.
+     *
+     * @param cursor where to start
+     * @param fetcher sends the search requests
+     * @return the iterator
+     */
+    static EventIterator paged(SearchCursor cursor, Fetcher fetcher) {
+        return new PagedEventIterator(cursor, fetcher, new SearchMetrics());
+    }
+
+    /**
+     * Creates an iterator that splits the range in shards of the same length, which are searched in parallel. Every
+     * shard starts at the end of the one before, which it includes, as the end of a range is exclusive. The events
+     * are returned in the order of the shards, so they are still ordered by their timestamps. Only the shards
+     * that are searched at the same time keep a page in memory.
+     *
+     * @param cursor where to start, the end of the range must be given, it can not be 0
+     * @param shards in how many shards the range is split
+     * @param parallelism how many shards are searched at the same time
+     * @param fetcher sends the search requests
+     * @return the iterator
+     */
+    static EventIterator sharded(SearchCursor cursor, int shards, int parallelism, Fetcher fetcher) {
+        return new ShardedEventIterator(cursor, shards, parallelism, fetcher, new SearchMetrics());
+    }
+}
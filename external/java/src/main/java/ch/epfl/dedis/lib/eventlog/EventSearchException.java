@@ -0,0 +1,21 @@
+package ch.epfl.dedis.lib.eventlog;
+
+import ch.epfl.dedis.lib.exception.CothorityException;
+
+/**
+ * Thrown by the methods of EventIterator, which cannot throw checked exceptions, if the search failed. The cause is
+ * the CothorityException of the failure.
+ */
+public class EventSearchException extends RuntimeException {
+    public EventSearchException(CothorityException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    /**
+     * @return the CothorityException that made the search fail
+     */
+    @Override
+    public synchronized CothorityException getCause() {
+        return (CothorityException) super.getCause();
+    }
+}
@@ -0,0 +1,164 @@
+package ch.epfl.dedis.lib.eventlog;
+
+import ch.epfl.dedis.lib.ConnectionPool;
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Goes through a search range page by page. The range is the one of the eventlog service, from <= when < to. A
+ * truncated page is followed by a request that starts again at the timestamp of its latest event, as the events of
+ * that timestamp might have been split over both pages. The events that have already been returned are removed from
+ * the new page.
+ */
+final class PagedEventIterator implements EventIterator {
+    private final String topic;
+    private final long to;
+    private final EventIterator.Fetcher fetcher;
+    private final SearchMetrics metrics;
+
+    // the position of the requests, which is ahead of the consumer by the events in the queue
+    private long requestFrom;
+    private Map<Event, Integer> requestSeen;
+    private boolean requestDone;
+    private CompletableFuture<SearchResponse> pending;
+    private long pendingStart;
+
+    // the position of the consumer
+    private long from;
+    private Map<Event, Integer> seen;
+    private final Deque<Event> queue = new ArrayDeque<>();
+
+    private final static Logger logger = LoggerFactory.getLogger(PagedEventIterator.class);
+
+    PagedEventIterator(SearchCursor cursor, EventIterator.Fetcher fetcher, SearchMetrics metrics) {
+        this.topic = cursor.getTopic();
+        this.to = cursor.getTo();
+        this.fetcher = fetcher;
+        this.metrics = metrics;
+        requestFrom = from = cursor.getFrom();
+        requestSeen = new HashMap<>(cursor.getSeen());
+        seen = new HashMap<>(cursor.getSeen());
+        requestDone = cursor.isDone();
+    }
+
+    /**
+     * Sends the request of the first page, if it hasn't been sent yet.
+     */
+    void start() {
+        if (pending == null && queue.isEmpty() && !requestDone) {
+            request();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (queue.isEmpty()) {
+            if (pending == null) {
+                if (requestDone) {
+                    return false;
+                }
+                request();
+            }
+            SearchResponse page;
+            try {
+                page = ConnectionPool.await(pending);
+            } catch (CothorityCommunicationException e) {
+                // the same request is sent again on the next call
+                pending = null;
+                throw new EventSearchException(e);
+            }
+            metrics.recordPage(page.events.size(), System.nanoTime() - pendingStart, page.truncated);
+            pending = null;
+            add(page);
+            if (!requestDone) {
+                request();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Event e = queue.poll();
+        if (e.getWhen() != from) {
+            from = e.getWhen();
+            seen = new HashMap<>();
+        }
+        seen.merge(e, 1, Integer::sum);
+        return e;
+    }
+
+    @Override
+    public SearchCursor getCursor() {
+        return new SearchCursor(topic, from, to, seen, requestDone && queue.isEmpty() && pending == null);
+    }
+
+    @Override
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void request() {
+        // the start is inclusive, so the events of requestFrom that have not been returned yet are included
+        pendingStart = System.nanoTime();
+        pending = fetcher.fetch(topic, requestFrom, to);
+    }
+
+    /**
+     * Adds the new events of the page to the queue and moves the position of the requests after them.
+     */
+    private void add(SearchResponse page) {
+        List<Event> events = new ArrayList<>(page.events);
+        // the sort is stable, so events with the same timestamp keep the order of the service
+        events.sort(Comparator.comparingLong(Event::getWhen));
+        // the events of pageFrom that have been returned already are in the page again
+        long pageFrom = requestFrom;
+        boolean repeated = !requestSeen.isEmpty();
+        Map<Event, Integer> skip = new HashMap<>(requestSeen);
+        boolean added = false;
+        for (Event e : events) {
+            if (e.getWhen() < pageFrom || (to != 0 && e.getWhen() >= to)) {
+                // outside of the range, a conode should not return these
+                continue;
+            }
+            if (e.getWhen() == pageFrom && skip.getOrDefault(e, 0) > 0) {
+                skip.merge(e, -1, Integer::sum);
+                continue;
+            }
+            if (e.getWhen() != requestFrom) {
+                requestFrom = e.getWhen();
+                requestSeen = new HashMap<>();
+            }
+            requestSeen.merge(e, 1, Integer::sum);
+            queue.add(e);
+            added = true;
+        }
+
+        if (!page.truncated) {
+            requestDone = true;
+        } else if (!added && repeated) {
+            // A full page of events that have all been returned already means that there are more events with
+            // the same timestamp than fit in a page. They cannot be fetched, asking again returns the same page.
+            throw new EventSearchException(new CothorityCommunicationException("more events at " + requestFrom +
+                    " than fit in a page"));
+        } else if (!added) {
+            // asking again would return the same page
+            logger.warn("got a truncated page without new events after {}, stopping the search", requestFrom);
+            requestDone = true;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ch.epfl.dedis.lib.eventlog;
+
+import ch.epfl.dedis.lib.exception.CothorityException;
+import ch.epfl.dedis.proto.EventLogProto;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SearchCursor is the position of a search that goes through the events page by page. It holds the time of the
+ * latest event that has been returned and the events with that time, so that the search can be resumed without
+ * missing or repeating the events of a timestamp that has been split over two pages.
+ * <p>
+ * A cursor can be stored with toBytes and restored with fromBytes, to resume a search in another process.
+ */
+public final class SearchCursor {
+    private final String topic;
+    private final long from;
+    private final long to;
+    private final Map<Event, Integer> seen;
+    private final boolean done;
+
+    SearchCursor(String topic, long from, long to, Map<Event, Integer> seen, boolean done) {
+        this.topic = topic;
+        this.from = from;
+        this.to = to;
+        this.seen = Collections.unmodifiableMap(new HashMap<>(seen));
+        this.done = done;
+    }
+
+    /**
+     * Creates a cursor at the start of a search. The range is the same as the one of EventLogInstance.search:
+     * from <= when < to.
+     *
+     * @param topic the topic to search, if it is an empty string, all topics are included
+     * @param from the start of the search range (inclusive)
+     * @param to the end of the search range (exclusive), if it is 0, the service searches up to the current time
+     * @return the cursor
+     */
+    public static SearchCursor of(String topic, long from, long to) {
+        return new SearchCursor(topic, from, to, Collections.emptyMap(), false);
+    }
+
+    /**
+     * Restores a cursor stored by toBytes.
+     *
+     * @param data the cursor as returned by toBytes
+     * @return the cursor
+     * @throws CothorityException if the data is not a cursor
+     */
+    public static SearchCursor fromBytes(byte[] data) throws CothorityException {
+        try {
+            CodedInputStream in = CodedInputStream.newInstance(data);
+            String topic = in.readString();
+            long from = in.readSInt64();
+            long to = in.readSInt64();
+            boolean done = in.readBool();
+            int n = in.readUInt32();
+            Map<Event, Integer> seen = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                Event e = new Event(EventLogProto.Event.parseFrom(in.readBytes()));
+                int count = in.readUInt32();
+                if (count <= 0) {
+                    throw new CothorityException("wrong count in cursor");
+                }
+                seen.put(e, count);
+            }
+            if (!in.isAtEnd()) {
+                throw new CothorityException("trailing data after cursor");
+            }
+            return new SearchCursor(topic, from, to, seen, done);
+        } catch (IOException e) {
+            throw new CothorityException("couldn't parse cursor", e);
+        }
+    }
+
+    /**
+     * @return the cursor as bytes, which can be restored with fromBytes
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(buf);
+        try {
+            out.writeStringNoTag(topic);
+            out.writeSInt64NoTag(from);
+            out.writeSInt64NoTag(to);
+            out.writeBoolNoTag(done);
+            out.writeUInt32NoTag(seen.size());
+            for (Map.Entry<Event, Integer> e : seen.entrySet()) {
+                out.writeBytesNoTag(e.getKey().toProto().toByteString());
+                out.writeUInt32NoTag(e.getValue());
+            }
+            out.flush();
+        } catch (IOException e) {
+            // a ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * @return the topic of the search
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return the time of the latest event that has been returned, or the start of the search range
+     */
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * @return the end of the search range (exclusive)
+     */
+    public long getTo() {
+        return to;
+    }
+
+    /**
+     * @return true if all events of the range have been returned
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return how many times each event with the time getFrom() has been returned already
+     */
+    Map<Event, Integer> getSeen() {
+        return seen;
+    }
+
+    /**
+     * @return the same position, but with a different end of the search range
+     */
+    SearchCursor withTo(long to) {
+        return new SearchCursor(topic, from, to, seen, done);
+    }
+
+    @Override
+    public String toString() {
+        return "topic: " + topic + ", from: " + from + ", to: " + to + ", seen: " + seen.size() + ", done: " + done;
+    }
+}
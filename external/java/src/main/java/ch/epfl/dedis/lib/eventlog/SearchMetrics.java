@@ -0,0 +1,119 @@
+package ch.epfl.dedis.lib.eventlog;
+
+import java.util.Arrays;
+
+/**
+ * SearchMetrics collects how many events the pages of a search returned and how long they took. A listener can be
+ * set to get the numbers of every page as it arrives. The metrics can be shared by the requests of a sharded search
+ * that run in parallel.
+ */
+public class SearchMetrics {
+    // how many latencies are kept to calculate the percentiles.
+    private static final int samples = 128;
+
+    private final long[] latencies = new long[samples];
+    private int pages;
+    private int truncatedPages;
+    private long events;
+    private long totalNanos;
+    private long maxNanos;
+    private volatile PageListener listener;
+
+    /**
+     * PageListener is called for every page of a search.
+     */
+    public interface PageListener {
+        /**
+         * @param events how many events the page returned
+         * @param latencyNanos how long the request of the page took, in nanoseconds
+         * @param truncated whether more events are waiting in the range of the request
+         */
+        void page(int events, long latencyNanos, boolean truncated);
+    }
+
+    /**
+     * Sets the listener that is called for every page. It is called from the thread that received the page.
+     *
+     * @param listener the listener, or null to remove it
+     */
+    public void setPageListener(PageListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records a page of a search.
+     *
+     * @param events how many events the page returned
+     * @param latencyNanos how long the request of the page took, in nanoseconds
+     * @param truncated whether more events are waiting in the range of the request
+     */
+    public void recordPage(int events, long latencyNanos, boolean truncated) {
+        synchronized (this) {
+            latencies[pages % samples] = latencyNanos;
+            pages++;
+            if (truncated) {
+                truncatedPages++;
+            }
+            this.events += events;
+            totalNanos += latencyNanos;
+            maxNanos = Math.max(maxNanos, latencyNanos);
+        }
+        PageListener l = listener;
+        if (l != null) {
+            l.page(events, latencyNanos, truncated);
+        }
+    }
+
+    /**
+     * @return how many pages have been received
+     */
+    public synchronized int getPages() {
+        return pages;
+    }
+
+    /**
+     * @return how many of the pages have been truncated
+     */
+    public synchronized int getTruncatedPages() {
+        return truncatedPages;
+    }
+
+    /**
+     * @return how many events the pages returned, including the events that have been returned twice at the
+     * border of two pages
+     */
+    public synchronized long getEvents() {
+        return events;
+    }
+
+    /**
+     * @return the average latency of a page in nanoseconds, 0 if no page has been received yet
+     */
+    public synchronized long getAverageNanos() {
+        return pages == 0 ? 0 : totalNanos / pages;
+    }
+
+    /**
+     * @return the highest latency of a page in nanoseconds
+     */
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the given percentile of the latencies of the latest pages.
+     *
+     * @param percentile between 0 and 100
+     * @return the latency in nanoseconds, or -1 if no page has been received yet
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        int n = Math.min(pages, samples);
+        if (n == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
+    }
+}
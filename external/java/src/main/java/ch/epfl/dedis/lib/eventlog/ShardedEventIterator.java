@@ -0,0 +1,88 @@
+package ch.epfl.dedis.lib.eventlog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits a search range in shards that are searched by their own PagedEventIterator. The shards after the current
+ * one are started ahead, so that up to parallelism shards are fetched at the same time. As the shards don't overlap
+ * and are returned one after the other, the events stay in the order of their timestamps.
+ */
+final class ShardedEventIterator implements EventIterator {
+    private final String topic;
+    private final long to;
+    private final int parallelism;
+    private final SearchMetrics metrics;
+    private final List<PagedEventIterator> shards = new ArrayList<>();
+    // the shard the events are taken from
+    private int current;
+    // how many shards have sent their first request
+    private int started;
+
+    ShardedEventIterator(SearchCursor cursor, int shards, int parallelism, EventIterator.Fetcher fetcher,
+                         SearchMetrics metrics) {
+        if (cursor.getTo() == 0) {
+            throw new IllegalArgumentException("the end of the range must be given");
+        }
+        if (shards < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("need at least one shard and a parallelism of at least one");
+        }
+        this.topic = cursor.getTopic();
+        this.to = cursor.getTo();
+        this.parallelism = parallelism;
+        this.metrics = metrics;
+
+        long from = cursor.getFrom();
+        long span = Math.max(0, to - from);
+        int n = (int) Math.max(1, Math.min(shards, span));
+        long end = shardEnd(from, span, n, 1);
+        this.shards.add(new PagedEventIterator(cursor.withTo(end), fetcher, metrics));
+        for (int i = 1; i < n; i++) {
+            long start = end;
+            end = shardEnd(from, span, n, i + 1);
+            this.shards.add(new PagedEventIterator(SearchCursor.of(topic, start, end), fetcher, metrics));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current < shards.size()) {
+            while (started < shards.size() && started < current + parallelism) {
+                shards.get(started++).start();
+            }
+            if (shards.get(current).hasNext()) {
+                return true;
+            }
+            current++;
+        }
+        return false;
+    }
+
+    @Override
+    public Event next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return shards.get(current).next();
+    }
+
+    @Override
+    public SearchCursor getCursor() {
+        int last = shards.size() - 1;
+        SearchCursor c = shards.get(Math.min(current, last)).getCursor();
+        return new SearchCursor(topic, c.getFrom(), to, c.getSeen(), current >= last && c.isDone());
+    }
+
+    @Override
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the end of the i-th of n shards, calculated without overflowing for long ranges
+     */
+    private static long shardEnd(long from, long span, int n, int i) {
+        return from + span / n * i + span % n * i / n;
+    }
+}
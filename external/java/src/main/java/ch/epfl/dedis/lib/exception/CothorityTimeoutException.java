@@ -0,0 +1,15 @@
+package ch.epfl.dedis.lib.exception;
+
+/**
+ * Thrown if a conode didn't reply in time. The conode might still be reachable, but it is too slow
+ * or hangs, so the same request might succeed on another node.
+ */
+public class CothorityTimeoutException extends CothorityUnavailableException {
+    public CothorityTimeoutException(String message) {
+        super(message);
+    }
+
+    public CothorityTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package ch.epfl.dedis.lib.exception;
+
+/**
+ * Thrown if a conode could not be reached or dropped the connection before replying. Contrary to
+ * an error returned by the service of the conode, the same request might succeed on another node.
+ */
+public class CothorityUnavailableException extends CothorityCommunicationException {
+    public CothorityUnavailableException(String message) {
+        super(message);
+    }
+
+    public CothorityUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
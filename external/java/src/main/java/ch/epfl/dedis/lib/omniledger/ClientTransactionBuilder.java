@@ -0,0 +1,192 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import ch.epfl.dedis.lib.omniledger.darc.Signer;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ClientTransactionBuilder creates large atomic transactions. The instructions are collected first and get their
+ * common nonce, index and length when the transaction is built. Then they are signed in parallel on a fork-join pool,
+ * and the instance IDs derived from the signed instructions are returned together with the transaction.
+ * <p>
+ * The signers must allow concurrent calls to sign. Signers that don't, e.g. keycards, should be used with a pool with
+ * a parallelism of 1.
+ */
+public class ClientTransactionBuilder {
+    private static final SecureRandom random = new SecureRandom();
+    // a task with fewer instructions signs them itself instead of splitting them up.
+    private static final int signThreshold = 16;
+
+    private final ForkJoinPool pool;
+    private final List<PendingInstruction> pending = new ArrayList<>();
+
+    /**
+     * Creates a builder that signs on the common fork-join pool.
+     */
+    public ClientTransactionBuilder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a builder that signs on the given pool.
+     * @param pool the pool used to sign the instructions
+     */
+    public ClientTransactionBuilder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Adds an instruction that spawns a new instance.
+     * @param instId the ID of the instance that spawns the new instance
+     * @param spawn the spawn object, which contains the contract and the arguments
+     * @return this builder
+     */
+    public ClientTransactionBuilder spawn(InstanceId instId, Spawn spawn) {
+        pending.add((nonce, index, length) -> new Instruction(instId, nonce, index, length, spawn));
+        return this;
+    }
+
+    /**
+     * Adds an instruction that invokes a command on an instance.
+     * @param instId the ID of the instance
+     * @param invoke the invoke object, which contains the command and the arguments
+     * @return this builder
+     */
+    public ClientTransactionBuilder invoke(InstanceId instId, Invoke invoke) {
+        pending.add((nonce, index, length) -> new Instruction(instId, nonce, index, length, invoke));
+        return this;
+    }
+
+    /**
+     * Adds an instruction that deletes an instance.
+     * @param instId the ID of the instance
+     * @param delete the delete object
+     * @return this builder
+     */
+    public ClientTransactionBuilder delete(InstanceId instId, Delete delete) {
+        pending.add((nonce, index, length) -> new Instruction(instId, nonce, index, length, delete));
+        return this;
+    }
+
+    /**
+     * @return how many instructions have been added
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Creates the instructions, signs them all by the same signers and derives an instance ID from every signed
+     * instruction, using Instruction.deriveId.
+     * @param signers the signers of every instruction
+     * @param what the string that gets mixed into the derived instance IDs
+     * @return the transaction and the derived instance IDs, in the order the instructions have been added
+     * @throws CothorityCryptoException if one of the signers fails
+     */
+    public Result build(List<Signer> signers, String what) throws CothorityCryptoException {
+        byte[] nonce = new byte[32];
+        random.nextBytes(nonce);
+        int length = pending.size();
+        Instruction[] instrs = new Instruction[length];
+        for (int i = 0; i < length; i++) {
+            instrs[i] = pending.get(i).create(nonce, i, length);
+        }
+
+        InstanceId[] ids = new InstanceId[length];
+        SignTask task = new SignTask(instrs, ids, signers, what, 0, length);
+        try {
+            if (length <= signThreshold) {
+                task.compute();
+            } else {
+                pool.invoke(task);
+            }
+        } catch (CompletionException e) {
+            // the pool might wrap the exception of the task once more.
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof CothorityCryptoException) {
+                    throw (CothorityCryptoException) t;
+                }
+            }
+            throw e;
+        }
+        return new Result(new ClientTransaction(Arrays.asList(instrs)), Arrays.asList(ids));
+    }
+
+    /**
+     * Result holds a built transaction and the instance IDs derived from its instructions.
+     */
+    public static final class Result {
+        private final ClientTransaction transaction;
+        private final List<InstanceId> instanceIds;
+
+        private Result(ClientTransaction transaction, List<InstanceId> instanceIds) {
+            this.transaction = transaction;
+            this.instanceIds = Collections.unmodifiableList(instanceIds);
+        }
+
+        /**
+         * @return the signed transaction
+         */
+        public ClientTransaction getTransaction() {
+            return transaction;
+        }
+
+        /**
+         * @return the derived instance ID of every instruction
+         */
+        public List<InstanceId> getInstanceIds() {
+            return instanceIds;
+        }
+    }
+
+    private interface PendingInstruction {
+        Instruction create(byte[] nonce, int index, int length);
+    }
+
+    /**
+     * Signs a range of the instructions, splitting it in two as long as it is big enough.
+     */
+    private static final class SignTask extends RecursiveAction {
+        private final Instruction[] instrs;
+        private final InstanceId[] ids;
+        private final List<Signer> signers;
+        private final String what;
+        private final int from;
+        private final int to;
+
+        private SignTask(Instruction[] instrs, InstanceId[] ids, List<Signer> signers, String what, int from, int to) {
+            this.instrs = instrs;
+            this.ids = ids;
+            this.signers = signers;
+            this.what = what;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > signThreshold) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SignTask(instrs, ids, signers, what, from, middle),
+                        new SignTask(instrs, ids, signers, what, middle, to));
+                return;
+            }
+            try {
+                for (int i = from; i < to; i++) {
+                    instrs[i].signBy(signers);
+                    ids[i] = instrs[i].deriveId(what);
+                }
+            } catch (CothorityCryptoException e) {
+                throw new CompletionException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+
+/**
+ * DataHeader is stored in the data of every omniledger block and holds the hashes that are covered by the signature
+ * of the block. There is no protobuf message for it, as the data is stored with the type-prefix of onet, so it is
+ * parsed by hand.
+ */
+public class DataHeader {
+    // onet prefixes a marshalled message with the uuid of its type.
+    private static final int typeLength = 16;
+
+    private byte[] collectionRoot = new byte[0];
+    private byte[] clientTransactionHash = new byte[0];
+    private byte[] stateChangesHash = new byte[0];
+    private long timestamp;
+
+    /**
+     * Parses the header of an omniledger block.
+     *
+     * @param sb the block holding the header in its data
+     * @throws CothorityCommunicationException if the data is not a header
+     */
+    public DataHeader(SkipBlock sb) throws CothorityCommunicationException {
+        byte[] data = sb.getData();
+        if (data.length < typeLength) {
+            throw new CothorityCommunicationException("block has no data header");
+        }
+        try {
+            CodedInputStream in = CodedInputStream.newInstance(data, typeLength, data.length - typeLength);
+            for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case 1:
+                        collectionRoot = in.readByteArray();
+                        break;
+                    case 2:
+                        clientTransactionHash = in.readByteArray();
+                        break;
+                    case 3:
+                        stateChangesHash = in.readByteArray();
+                        break;
+                    case 4:
+                        timestamp = in.readSInt64();
+                        break;
+                    default:
+                        in.skipField(tag);
+                }
+            }
+        } catch (IOException e) {
+            throw new CothorityCommunicationException("couldn't parse data header", e);
+        }
+    }
+
+    /**
+     * @return the root of the collection after applying the transactions of the block
+     */
+    public byte[] getCollectionRoot() {
+        return collectionRoot;
+    }
+
+    /**
+     * @return the hash of the transactions of the block
+     */
+    public byte[] getClientTransactionHash() {
+        return clientTransactionHash;
+    }
+
+    /**
+     * @return the hash of the state changes of the block
+     */
+    public byte[] getStateChangesHash() {
+        return stateChangesHash;
+    }
+
+    /**
+     * @return the time the block has been created, in seconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,220 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * InclusionWatcher waits for instances to appear in the global state of omniledger. All instances that are waited
+ * for share one request for the latest block every quarter of a block interval, and their proofs are only fetched
+ * again once a new block has been added. The java protobufs don't know the content of a block, so the inclusion
+ * cannot be read from the block itself.
+ */
+class InclusionWatcher {
+    private static final long minPeriodNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "omniledger-watcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Function<InstanceId, CompletableFuture<Proof>> prover;
+    private final InstanceId head;
+    private final long blockNanos;
+    private final long periodNanos;
+    private final List<Watch> watches = new ArrayList<>();
+    private int latestIndex = -1;
+    private boolean running;
+
+    private final static Logger logger = LoggerFactory.getLogger(InclusionWatcher.class);
+
+    /**
+     * @param prover        fetches the proof of an instance
+     * @param blockInterval the time between two blocks
+     */
+    InclusionWatcher(Function<InstanceId, CompletableFuture<Proof>> prover, Duration blockInterval) {
+        this.prover = prover;
+        try {
+            // the config instance always exists, its proof is the cheapest way to learn the latest block.
+            head = InstanceId.zero();
+        } catch (CothorityCryptoException e) {
+            throw new RuntimeException(e);
+        }
+        blockNanos = blockInterval.toNanos();
+        periodNanos = Math.max(minPeriodNanos, blockNanos / 4);
+    }
+
+    /**
+     * Waits for the proof of an instance to be accepted.
+     *
+     * @param id        the instance to wait for
+     * @param accept    returns true for the proof to wait for
+     * @param maxBlocks how many new blocks to wait for before giving up. If no new blocks are created, the watch
+     *                  gives up after maxBlocks + 1 block intervals.
+     * @return a future that completes with the accepted proof, or with a CothorityCommunicationException
+     */
+    CompletableFuture<Proof> watch(InstanceId id, Predicate<Proof> accept, int maxBlocks) {
+        Watch w = new Watch(id, accept, maxBlocks, System.nanoTime() + (maxBlocks + 1) * blockNanos);
+        synchronized (this) {
+            watches.add(w);
+            if (!running) {
+                running = true;
+                scheduler.execute(this::tick);
+            }
+        }
+        return w.result;
+    }
+
+    /**
+     * @return how many instances are waited for
+     */
+    synchronized int pending() {
+        return watches.size();
+    }
+
+    private void tick() {
+        CompletableFuture<Proof> latest;
+        try {
+            latest = prover.apply(head);
+        } catch (RuntimeException e) {
+            latest = new CompletableFuture<>();
+            latest.completeExceptionally(e);
+        }
+        latest.whenComplete((p, e) -> {
+            CompletableFuture<Void> probes;
+            try {
+                probes = round(p, e);
+            } catch (RuntimeException re) {
+                // the next rounds would most probably fail the same way, so the watches are not kept hanging.
+                logger.error("watching for new blocks failed: {}", re.toString());
+                failAll(re);
+                probes = CompletableFuture.completedFuture(null);
+            }
+            probes.whenComplete((v, ignored) -> next());
+        });
+    }
+
+    /**
+     * Updates the latest block from the proof of the head and probes the watches that might have been stored.
+     *
+     * @return a future that completes once all probes are done
+     */
+    private CompletableFuture<Void> round(Proof p, Throwable e) {
+        List<Watch> probe = new ArrayList<>();
+        synchronized (this) {
+            boolean advanced = false;
+            if (e != null) {
+                logger.warn("couldn't get latest block: {}", e.toString());
+            } else {
+                int index = p.getLatest().getIndex();
+                advanced = index > latestIndex;
+                latestIndex = Math.max(latestIndex, index);
+            }
+            for (Watch w : watches) {
+                if (w.startIndex < 0 && latestIndex >= 0) {
+                    // new watches are checked right away, the instance might already be stored.
+                    w.startIndex = latestIndex;
+                    probe.add(w);
+                } else if (advanced || w.retry || w.expired(latestIndex)) {
+                    w.retry = false;
+                    probe.add(w);
+                }
+            }
+        }
+        List<CompletableFuture<Void>> probes = new ArrayList<>();
+        for (Watch w : probe) {
+            probes.add(probe(w));
+        }
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Schedules the next round, or stops if nothing is waited for anymore. It is always called at the end of a
+     * round, so that the watches never wait for a round that doesn't come.
+     */
+    private void next() {
+        synchronized (this) {
+            if (watches.isEmpty()) {
+                running = false;
+                return;
+            }
+        }
+        scheduler.schedule(this::tick, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void failAll(Throwable cause) {
+        List<Watch> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(watches);
+            watches.clear();
+        }
+        for (Watch w : failed) {
+            w.result.completeExceptionally(new CothorityCommunicationException(
+                    "couldn't wait for instance " + w.id + ": " + cause.toString(), cause));
+        }
+    }
+
+    private CompletableFuture<Void> probe(Watch w) {
+        return prover.apply(w.id).handle((p, e) -> {
+            boolean accepted = false;
+            Throwable failure = null;
+            if (e == null) {
+                try {
+                    accepted = w.accept.test(p);
+                } catch (RuntimeException re) {
+                    failure = re;
+                }
+            }
+            boolean expired;
+            synchronized (this) {
+                // a proof that couldn't be fetched is asked again in the next round.
+                w.retry = e != null;
+                expired = w.expired(latestIndex);
+                if (accepted || failure != null || expired) {
+                    watches.remove(w);
+                }
+            }
+            if (accepted) {
+                w.result.complete(p);
+            } else if (failure != null) {
+                w.result.completeExceptionally(failure);
+            } else if (expired) {
+                w.result.completeExceptionally(new CothorityCommunicationException(
+                        "instance " + w.id + " has not been stored in " + w.maxBlocks + " blocks"));
+            }
+            return null;
+        });
+    }
+
+    private static final class Watch {
+        private final InstanceId id;
+        private final Predicate<Proof> accept;
+        private final int maxBlocks;
+        private final long deadline;
+        private final CompletableFuture<Proof> result = new CompletableFuture<>();
+        private int startIndex = -1;
+        private boolean retry;
+
+        private Watch(InstanceId id, Predicate<Proof> accept, int maxBlocks, long deadline) {
+            this.id = id;
+            this.accept = accept;
+            this.maxBlocks = maxBlocks;
+            this.deadline = deadline;
+        }
+
+        private boolean expired(int latestIndex) {
+            return (startIndex >= 0 && latestIndex >= startIndex + maxBlocks) || System.nanoTime() > deadline;
+        }
+    }
+}
@@ -5,8 +5,6 @@ import ch.epfl.dedis.lib.omniledger.darc.*;
 import ch.epfl.dedis.proto.TransactionProto;
 import com.google.protobuf.ByteString;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -16,6 +14,14 @@ import java.util.List;
  * An instruction is sent and executed by OmniLedger.
  */
 public class Instruction {
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+
     private InstanceId instId;
     private byte[] nonce;
     private int index;
@@ -24,6 +30,8 @@ public class Instruction {
     private Invoke invoke;
     private Delete delete;
     private List<Signature> signatures;
+    // the digest doesn't depend on the signatures, so it is only calculated once.
+    private volatile byte[] digest;
 
     /**
      * Use this constructor if it is a spawn instruction, i.e. you want to create a new object.
@@ -92,13 +100,22 @@ public class Instruction {
      * @return The digest.
      */
     public byte[] hash() {
+        byte[] d = this.digest;
+        if (d == null) {
+            d = calculateHash();
+            this.digest = d;
+        }
+        return d.clone();
+    }
+
+    private byte[] calculateHash() {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            MessageDigest digest = sha256();
             digest.update(this.instId.getDarcId().getId());
             digest.update(this.instId.getSubId().getId());
             digest.update(this.nonce);
-            digest.update(intToArr4(this.index));
-            digest.update(intToArr4(this.length));
+            updateInt(digest, this.index);
+            updateInt(digest, this.length);
             List<Argument> args= new ArrayList<>();
             if (this.spawn != null) {
                 digest.update((byte)(0));
@@ -115,8 +132,6 @@ public class Instruction {
                 digest.update(a.getValue());
             }
             return digest.digest();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
         } catch (CothorityCryptoException e){
             throw new RuntimeException(e);
         }
@@ -210,23 +225,33 @@ public class Instruction {
      * @throws CothorityCryptoException
      */
     public InstanceId deriveId(String what) throws CothorityCryptoException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            digest.update(what.getBytes());
-            digest.update(this.hash());
-            for (Signature sig : this.signatures) {
-                digest.update(sig.signature);
-            }
-            return new InstanceId(this.instId.getDarcId(), new SubId(digest.digest()));
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+        // the hash is calculated first, as it uses the same digest
+        byte[] hash = this.hash();
+        MessageDigest digest = sha256();
+        digest.update(what.getBytes());
+        digest.update(hash);
+        for (Signature sig : this.signatures) {
+            digest.update(sig.signature);
         }
+        return new InstanceId(this.instId.getDarcId(), new SubId(digest.digest()));
+    }
+
+    /**
+     * @return the digest of this thread, reset in case a calculation before has been interrupted by an exception
+     */
+    private static MessageDigest sha256() {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        return digest;
     }
 
-    private static byte[] intToArr4(int x) {
-        ByteBuffer b = ByteBuffer.allocate(4);
-        b.order(ByteOrder.LITTLE_ENDIAN);
-        b.putInt(x);
-        return b.array();
+    /**
+     * Adds x as 4 bytes in little endian to the digest.
+     */
+    private static void updateInt(MessageDigest digest, int x) {
+        digest.update((byte) x);
+        digest.update((byte) (x >> 8));
+        digest.update((byte) (x >> 16));
+        digest.update((byte) (x >> 24));
     }
 }
@@ -1,14 +1,16 @@
 package ch.epfl.dedis.lib.omniledger;
 
+import ch.epfl.dedis.lib.ConnectionPool;
 import ch.epfl.dedis.lib.Roster;
-import ch.epfl.dedis.lib.ServerIdentity;
 import ch.epfl.dedis.lib.SkipBlock;
 import ch.epfl.dedis.lib.SkipblockId;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
 import ch.epfl.dedis.lib.exception.CothorityException;
 import ch.epfl.dedis.lib.exception.CothorityNotFoundException;
 import ch.epfl.dedis.lib.omniledger.darc.Darc;
 import ch.epfl.dedis.lib.omniledger.darc.DarcId;
+import ch.epfl.dedis.lib.skipchain.SkipBlockStore;
 import ch.epfl.dedis.lib.skipchain.SkipchainRPC;
 import ch.epfl.dedis.proto.OmniLedgerProto;
 import com.google.protobuf.ByteString;
@@ -17,6 +19,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
 
 import static java.time.temporal.ChronoUnit.NANOS;
 
@@ -35,7 +43,12 @@ public class OmniledgerRPC {
     private SkipBlock genesis;
     private SkipBlock latest;
     private SkipchainRPC skipchain;
+    private InclusionWatcher watcher;
+    private ProofCache proofs;
+    private volatile boolean leaderReads;
     public static final int currentVersion = 1;
+    // how many proofs are cached.
+    private static final int proofCacheSize = 1024;
 
     private final Logger logger = LoggerFactory.getLogger(OmniledgerRPC.class);
 
@@ -64,12 +77,18 @@ public class OmniledgerRPC {
         } catch (InvalidProtocolBufferException e) {
             throw new CothorityCommunicationException(e);
         }
+        // the proofs are verified starting from the roster of the genesis block
+        if (!Arrays.equals(genesis.calculateHash(), genesis.getHash())) {
+            throw new CothorityCryptoException("genesis block doesn't hash to its id");
+        }
         latest = genesis;
         logger.info("Created new OmniLedger: {}", genesis.getId().toString());
         skipchain = new SkipchainRPC(r, genesis.getId());
+        skipchain.getStore().put(genesis);
         config = new Config(blockInterval);
         roster = r;
         genesisDarc = d;
+        proofs = new ProofCache(proofCacheSize, blockInterval);
     }
 
     /**
@@ -81,32 +100,53 @@ public class OmniledgerRPC {
      * @throws CothorityException
      */
     public OmniledgerRPC(Roster roster, SkipblockId skipchainId) throws CothorityException {
+        this(roster, skipchainId, SkipBlockStore.inMemory());
+    }
+
+    /**
+     * Like the constructor above, but keeps the skipblocks in the given store. When the store has been used
+     * before, only the blocks after the latest stored block are fetched and verified.
+     *
+     * @param roster the roster to talk to
+     * @param skipchainId the ID of the genesis skipblock, aka skipchain ID
+     * @param store where the verified skipblocks are kept
+     * @throws CothorityException
+     */
+    public OmniledgerRPC(Roster roster, SkipblockId skipchainId, SkipBlockStore store) throws CothorityException {
+        // the genesis block hashes to the skipchain ID, so it can be trusted to verify the proofs.
+        skipchain = new SkipchainRPC(roster, skipchainId, store);
+        genesis = skipchain.getSkipblock(skipchainId);
+
         // find the darc ID
-        Proof proof = OmniledgerRPC.getProof(roster, skipchainId, InstanceId.zero());
-        OmniledgerRPC.checkProof(proof, "config");
-        DarcId darcId = new DarcId(proof.getValues().get(0));
+        Proof configProof = OmniledgerRPC.getProof(roster, genesis, InstanceId.zero());
+        OmniledgerRPC.checkProof(configProof, "config");
+        DarcId darcId = new DarcId(configProof.getValues().get(0));
 
-        // find the actual darc
+        // find the actual darc and the config info, both depend only on the darc ID
         InstanceId darcInstanceId = new InstanceId(darcId, SubId.zero());
-        proof = OmniledgerRPC.getProof(roster, skipchainId, darcInstanceId);
-        OmniledgerRPC.checkProof(proof, "darc");
+        InstanceId configInstanceId = new InstanceId(darcId, SubId.one());
+        CompletableFuture<Proof> darcRequest = OmniledgerRPC.getProofAsync(roster, genesis, darcInstanceId, false);
+        CompletableFuture<Proof> infoRequest = OmniledgerRPC.getProofAsync(roster, genesis, configInstanceId, false);
+        Proof darcProof = awaitProof(darcRequest);
+        OmniledgerRPC.checkProof(darcProof, "darc");
         try {
-            genesisDarc = new Darc(proof.getValues().get(0));
+            genesisDarc = new Darc(darcProof.getValues().get(0));
         } catch (InvalidProtocolBufferException e) {
             throw new CothorityCommunicationException(e);
         }
-
-        // find the config info
-        InstanceId configInstanceId = new InstanceId(darcId, SubId.one());
-        proof = OmniledgerRPC.getProof(roster, skipchainId, configInstanceId);
-        OmniledgerRPC.checkProof(proof, "config");
-        config = new Config(proof.getValues().get(0));
+        Proof infoProof = awaitProof(infoRequest);
+        OmniledgerRPC.checkProof(infoProof, "config");
+        config = new Config(infoProof.getValues().get(0));
 
         // find the skipchain info
-        skipchain = new SkipchainRPC(roster, skipchainId);
         this.roster = roster;
-        genesis = skipchain.getSkipblock(skipchainId);
         latest = skipchain.getLatestSkipblock();
+
+        proofs = new ProofCache(proofCacheSize, config.getBlockInterval());
+        proofs.advance(latest.getIndex());
+        proofs.put(InstanceId.zero(), configProof);
+        proofs.put(darcInstanceId, darcProof);
+        proofs.put(configInstanceId, infoProof);
     }
 
     /**
@@ -121,82 +161,193 @@ public class OmniledgerRPC {
 
     /**
      * Sends a transaction to omniledger, but doesn't wait for the inclusion of this transaction in a block.
-     * Once the transaction has been sent, you need to poll to verify if it has been included or not.
+     * Once the transaction has been sent, use waitForInstance to wait for its inclusion.
      *
      * @param t is the client transaction holding one or more instructions to be sent to omniledger.
      */
     public void sendTransaction(ClientTransaction t) throws CothorityException {
+        ConnectionPool.await(sendTransactionAsync(t));
+    }
+
+    /**
+     * Sends a transaction to the leader of omniledger without waiting for the reply.
+     *
+     * @param t is the client transaction holding one or more instructions to be sent to omniledger.
+     * @return a future that completes once the leader accepted the transaction, or with a
+     * CothorityCommunicationException
+     */
+    public CompletableFuture<Void> sendTransactionAsync(ClientTransaction t) {
         OmniLedgerProto.AddTxRequest.Builder request =
                 OmniLedgerProto.AddTxRequest.newBuilder();
         request.setVersion(currentVersion);
         request.setSkipchainid(ByteString.copyFrom(skipchain.getID().getId()));
         request.setTransaction(t.toProto());
 
-        ByteString msg = roster.sendMessage("OmniLedger/AddTxRequest", request.build());
-        try{
-            OmniLedgerProto.AddTxResponse reply =
-                    OmniLedgerProto.AddTxResponse.parseFrom(msg);
-            // TODO do something with the reply?
-            logger.info("Successfully stored request - waiting for inclusion");
-        } catch (InvalidProtocolBufferException e){
-            throw new CothorityCommunicationException(e);
-        }
+        return roster.sendMessageAsync("OmniLedger/AddTxRequest", request.build()).thenApply(msg -> {
+            try {
+                OmniLedgerProto.AddTxResponse.parseFrom(msg);
+                // TODO do something with the reply?
+                logger.info("Successfully stored request - waiting for inclusion");
+                return null;
+            } catch (InvalidProtocolBufferException e) {
+                throw new CompletionException(new CothorityCommunicationException(e));
+            }
+        });
+    }
+
+    /**
+     * Sends the requests for proofs, also the ones of waitForInstance, to the leader only. This only matters if
+     * the roster spreads read-only requests, see Roster.setNodeSelector. Then a node that lags behind the leader
+     * returns the proof of an older block: an instance that has just been stored might be missing for a block
+     * longer, and the cache holds older proofs until the next block is seen.
+     *
+     * @param leaderReads true to ask only the leader for proofs
+     */
+    public void setLeaderReads(boolean leaderReads) {
+        this.leaderReads = leaderReads;
     }
 
     /**
      * Gets a proof from omniledger to show that a given instance is in the
-     * global state.
+     * global state. The proof is verified before it is returned, and kept
+     * until a newer block is known, so that hot instances like the genesis
+     * darc are only fetched once per block. If the roster spreads read-only
+     * requests and setLeaderReads is not set, the proof may come from a node
+     * that lags behind the leader.
      *
      * @param id is the id of the instance to be fetched
      * @throws CothorityException
      */
     public Proof getProof(InstanceId id) throws CothorityException {
-        OmniLedgerProto.GetProof.Builder request =
-                OmniLedgerProto.GetProof.newBuilder();
-        request.setVersion(currentVersion);
-        request.setId(skipchain.getID().toProto());
-        request.setKey(id.toByteString());
-
-        ByteString msg = roster.sendMessage("OmniLedger/GetProof", request.build());
-        try{
-            OmniLedgerProto.GetProofResponse reply =
-                    OmniLedgerProto.GetProofResponse.parseFrom(msg);
-            logger.info("Successfully received proof");
-            return new Proof(reply.getProof());
-        } catch (InvalidProtocolBufferException e){
-            throw new CothorityCommunicationException(e);
+        return awaitProof(getProofAsync(id));
+    }
+
+    /**
+     * Gets the proofs of many instances. The proofs that are not in the cache
+     * are fetched in parallel.
+     *
+     * @param ids the ids of the instances to be fetched
+     * @return the proofs in the same order as the ids
+     * @throws CothorityException
+     */
+    public List<Proof> getProofs(List<InstanceId> ids) throws CothorityException {
+        List<CompletableFuture<Proof>> requests = new ArrayList<>(ids.size());
+        for (InstanceId id : ids) {
+            requests.add(getProofAsync(id));
+        }
+        List<Proof> ret = new ArrayList<>(ids.size());
+        for (CompletableFuture<Proof> r : requests) {
+            ret.add(awaitProof(r));
+        }
+        return ret;
+    }
+
+    /**
+     * Asks omniledger for a proof without waiting for the reply. Like
+     * getProof, the proof is verified and served from the cache if possible.
+     *
+     * @param id is the id of the instance to be fetched
+     * @return a future that completes with the proof, or with a CothorityException
+     */
+    public CompletableFuture<Proof> getProofAsync(InstanceId id) {
+        Proof cached = proofs.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return fetchProofAsync(id);
+    }
+
+    /**
+     * Fetches a fresh proof from omniledger, verifies it and stores it in the
+     * cache. If the proof has been created in a newer block, the latest block
+     * is updated and the proofs of older blocks are dropped.
+     */
+    private CompletableFuture<Proof> fetchProofAsync(InstanceId id) {
+        return getProofAsync(roster, genesis, id, leaderReads).thenApply(p -> {
+            SkipBlock sb = p.getLatest();
+            synchronized (this) {
+                if (latest == null || sb.getIndex() > latest.getIndex()) {
+                    latest = sb;
+                }
+            }
+            proofs.put(id, p);
+            return p;
+        });
+    }
+
+    /**
+     * Waits for an instance to be stored in the global state, e.g. after sending the transaction that spawns it.
+     * Instead of sleeping for a fixed time, omniledger is asked for the latest block and the proof of the instance
+     * is only fetched again once a new block has been added. If the proofs are not fetched from the leader, see
+     * setLeaderReads, a node that lags behind can make this wait for more blocks.
+     *
+     * @param id        the instance to wait for
+     * @param maxBlocks how many new blocks to wait for before giving up
+     * @return the proof of the instance
+     * @throws CothorityCommunicationException if the instance hasn't been stored within maxBlocks blocks
+     */
+    public Proof waitForInstance(InstanceId id, int maxBlocks) throws CothorityCommunicationException {
+        return ConnectionPool.await(waitForProofAsync(id, Proof::matches, maxBlocks));
+    }
+
+    /**
+     * Like waitForInstance, but waits until the proof of the instance is accepted by the given predicate. This is
+     * useful to wait for an instance that has been changed, e.g. a darc that has been evolved.
+     *
+     * @param id        the instance to wait for
+     * @param accept    returns true for the proof to wait for
+     * @param maxBlocks how many new blocks to wait for before giving up
+     * @return the accepted proof
+     * @throws CothorityCommunicationException if no proof has been accepted within maxBlocks blocks
+     */
+    public Proof waitForProof(InstanceId id, Predicate<Proof> accept, int maxBlocks) throws CothorityCommunicationException {
+        return ConnectionPool.await(waitForProofAsync(id, accept, maxBlocks));
+    }
+
+    /**
+     * Like waitForProof, but doesn't block. All instances waited for by this omniledger object share the requests
+     * for the latest block.
+     *
+     * @param id        the instance to wait for
+     * @param accept    returns true for the proof to wait for
+     * @param maxBlocks how many new blocks to wait for before giving up
+     * @return a future that completes with the accepted proof, or with a CothorityCommunicationException
+     */
+    public CompletableFuture<Proof> waitForProofAsync(InstanceId id, Predicate<Proof> accept, int maxBlocks) {
+        synchronized (this) {
+            if (watcher == null) {
+                watcher = new InclusionWatcher(this::fetchProofAsync, config.getBlockInterval());
+            }
         }
+        return watcher.watch(id, accept, maxBlocks);
     }
 
     /**
-     * Fetches the latest configuration and genesis darc from omniledger.
+     * Fetches the latest configuration and genesis darc from omniledger. All
+     * cached proofs are dropped.
      *
      * @throws CothorityException
      */
     public void update() throws CothorityException {
         SkipBlock sb =  skipchain.getLatestSkipblock();
+        proofs.clear();
         if (sb != null){
-            latest = sb;
+            synchronized (this) {
+                latest = sb;
+            }
+            proofs.advance(sb.getIndex());
         }
     }
 
     /**
-     * Verifies if the nodes representing the cothority are alive and reply to a ping.
+     * Verifies if the nodes representing the cothority are alive and reply to a ping. All nodes are
+     * contacted in parallel.
      *
      * @return true if all nodes are live, false if one or more are not responding.
      * @throws CothorityException if something failed.
      */
     public boolean checkLiveness() throws CothorityException {
-        for (ServerIdentity si : roster.getNodes()) {
-            try {
-                logger.info("Checking status of {}", si.getAddress());
-                si.GetStatus();
-            } catch (CothorityCommunicationException e) {
-                logger.warn("Failing node {}: {}", si.getAddress(), e.toString());
-                return false;
-            }
-        }
-        return true;
+        return roster.checkLiveness();
     }
 
     /**
@@ -222,9 +373,9 @@ public class OmniledgerRPC {
 
     /**
      * @return latest skipblock - might be null if omniledger has been instantiated from a buffer and didn't
-     * 'update' yet.
+     * 'update' yet. It is also updated when a proof comes from a newer block.
      */
-    public SkipBlock getLatest() {
+    public synchronized SkipBlock getLatest() {
         return latest;
     }
 
@@ -249,19 +400,48 @@ public class OmniledgerRPC {
         }
     }
 
-    private static Proof getProof(Roster roster, SkipblockId skipchainId, InstanceId key) throws CothorityCommunicationException {
-        OmniLedgerProto.GetProof.Builder configBuilder = OmniLedgerProto.GetProof.newBuilder();
-        configBuilder.setVersion(currentVersion);
-        configBuilder.setId(skipchainId.toProto());
-        configBuilder.setKey(key.toByteString());
-
-        ByteString msg = roster.sendMessage("OmniLedger/GetProof", configBuilder.build());
+    private static Proof getProof(Roster roster, SkipBlock genesis, InstanceId key) throws CothorityException {
+        return awaitProof(getProofAsync(roster, genesis, key, false));
+    }
 
+    /**
+     * Like ConnectionPool.await, but keeps a failed verification as CothorityCryptoException.
+     */
+    private static Proof awaitProof(CompletableFuture<Proof> request) throws CothorityException {
         try {
-            OmniLedgerProto.GetProofResponse reply = OmniLedgerProto.GetProofResponse.parseFrom(msg);
-            return new Proof(reply.getProof());
-        } catch (InvalidProtocolBufferException e) {
-            throw new CothorityCommunicationException(e);
+            return ConnectionPool.await(request);
+        } catch (CothorityCommunicationException e) {
+            if (e.getCause() instanceof CothorityCryptoException) {
+                throw (CothorityCryptoException) e.getCause();
+            }
+            throw e;
         }
     }
+
+    /**
+     * Fetches a proof and verifies that it is correct and that its latest block is signed by the skipchain of the
+     * given genesis block.
+     */
+    private static CompletableFuture<Proof> getProofAsync(Roster roster, SkipBlock genesis, InstanceId key,
+                                                          boolean leaderOnly) {
+        OmniLedgerProto.GetProof.Builder request = OmniLedgerProto.GetProof.newBuilder();
+        request.setVersion(currentVersion);
+        request.setId(genesis.getProto().getHash());
+        request.setKey(key.toByteString());
+
+        return roster.sendMessageAsync("OmniLedger/GetProof", request.build(), leaderOnly).thenApply(msg -> {
+            try {
+                OmniLedgerProto.GetProofResponse reply = OmniLedgerProto.GetProofResponse.parseFrom(msg);
+                Proof p = new Proof(reply.getProof());
+                if (!p.verify(genesis)) {
+                    throw new CothorityCryptoException("proof of " + key + " doesn't verify");
+                }
+                return p;
+            } catch (InvalidProtocolBufferException e) {
+                throw new CompletionException(new CothorityCommunicationException(e));
+            } catch (CothorityException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 }
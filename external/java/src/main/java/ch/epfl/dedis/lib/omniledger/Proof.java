@@ -1,18 +1,39 @@
 package ch.epfl.dedis.lib.omniledger;
 
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.exception.CothorityException;
+import ch.epfl.dedis.lib.skipchain.ForwardLink;
 import ch.epfl.dedis.proto.OmniLedgerProto;
+import ch.epfl.dedis.proto.SkipBlockProto;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Proof represents a key/value entry in the collection and the path to the
  * root node.
  */
 public class Proof {
+    private static final int labelLength = 32;
+    private static final ByteString zeroLabel = ByteString.copyFrom(new byte[labelLength]);
+    // interior nodes whose label has been verified, indexed by the id of their skipchain followed by their label.
+    private static final Map<ByteString, OmniLedgerProto.CollectionProof.Node> verified = lru(4096);
+    // latest blocks that have been reached by verified forward links, indexed by the id of their skipchain
+    // followed by their own id.
+    private static final Set<ByteString> trustedBlocks = Collections.newSetFromMap(lru(256));
+
     private OmniLedgerProto.Proof proof;
     private OmniLedgerProto.CollectionProof.Node leaf;
 
@@ -34,17 +55,48 @@ public class Proof {
     }
 
     /**
-     * Verifies the proof with regard to the root id. It will follow all
-     * steps and make sure that the hashes work out, starting from the
-     * leaf. At the end it will verify against the root hash to make sure
-     * that the inclusion proof is correct.
+     * Verifies the proof against the genesis block of its skipchain. It checks that
+     * <ul>
+     * <li>the latest block hashes to its id and belongs to the skipchain of the genesis block,</li>
+     * <li>the forward links lead from the genesis block to the latest block, every link being collectively
+     * signed by the roster of the block it starts from, starting with the roster of the genesis block,</li>
+     * <li>the inclusion proof is consistent, by following all steps from the root to the leaf and making sure
+     * that the hashes work out, and that its root is the one of the latest block.</li>
+     * </ul>
+     * The genesis block must come from a trusted source, e.g. by checking that it hashes to the skipchain id.
+     * <p>
+     * This version of omniledger stores the key of the root node as the collection root in the block, which is
+     * empty. So the inclusion proof cannot be tied to the latest block: the check is the same as the one of the
+     * service, and a newer version storing the root label is checked against that label.
+     * <p>
+     * The hashes of interior nodes and the latest blocks that have already been verified are remembered per
+     * skipchain, so the upper levels of the tree and the forward links, which are the same for all proofs of a
+     * block, are only verified once.
+     *
+     * @param genesis the genesis block of the skipchain
+     * @return true if all checks verify, false if there is a mismatch in the hashes or the signatures
+     * @throws CothorityException if the latest block cannot be parsed
+     */
+    public boolean verify(SkipBlock genesis) throws CothorityException {
+        SkipBlock latest = getLatest();
+        if (!Arrays.equals(latest.calculateHash(), latest.getHash()) ||
+                !latest.getSkipchainId().equals(genesis.getId())) {
+            return false;
+        }
+        ByteString chain = genesis.getProto().getHash();
+        return verifyCollection(chain) && verifyLinks(chain, genesis, latest);
+    }
+
+    /**
+     * Verifies only the inclusion proof, without checking that the latest block belongs to a skipchain.
      *
-     * @return true if all checks verify, false if there is a mismatch in the
-     * hashes
-     * @throws CothorityException
+     * @return true if the inclusion proof is consistent with the latest block
+     * @throws CothorityException if the latest block cannot be parsed
+     * @deprecated this doesn't prove anything about the state of a skipchain, use verify(SkipBlock)
      */
+    @Deprecated
     public boolean verify() throws CothorityException {
-        return false;
+        return verifyCollection(ByteString.EMPTY);
     }
 
     /**
@@ -72,4 +124,158 @@ public class Proof {
         }
         return ret;
     }
+
+    /**
+     * @return the latest skipblock of omniledger at the time the proof has been created.
+     */
+    public SkipBlock getLatest() {
+        return new SkipBlock(proof.getLatest());
+    }
+
+    /**
+     * Follows all steps of the inclusion proof from the root to the leaf and compares the root to the latest
+     * block.
+     */
+    private boolean verifyCollection(ByteString chain) throws CothorityException {
+        OmniLedgerProto.CollectionProof ip = proof.getInclusionProof();
+        if (ip.getStepsCount() == 0) {
+            return false;
+        }
+        OmniLedgerProto.CollectionProof.Node cursor = ip.getRoot();
+        if (isLeaf(cursor) || !consistent(chain, cursor)) {
+            return false;
+        }
+        byte[] path = sha256(ip.getKey().toByteArray());
+        for (int depth = 0; depth < ip.getStepsCount(); depth++) {
+            OmniLedgerProto.CollectionProof.Step step = ip.getSteps(depth);
+            if (isLeaf(cursor) ||
+                    !cursor.getChildren().getLeft().equals(step.getLeft().getLabel()) ||
+                    !cursor.getChildren().getRight().equals(step.getRight().getLabel())) {
+                return false;
+            }
+            if (!consistent(chain, step.getLeft()) || !consistent(chain, step.getRight())) {
+                return false;
+            }
+            cursor = bit(path, depth) ? step.getRight() : step.getLeft();
+        }
+        if (!isLeaf(cursor) || (leaf != null && !leaf.equals(cursor))) {
+            return false;
+        }
+
+        byte[] root = new DataHeader(getLatest()).getCollectionRoot();
+        if (root.length == labelLength) {
+            return Arrays.equals(root, ip.getRoot().getLabel().toByteArray());
+        }
+        // This version of omniledger stores the key of the root node in the
+        // block, which is what Proof.Verify of the service compares it to.
+        return Arrays.equals(root, ip.getRoot().getKey().toByteArray());
+    }
+
+    /**
+     * Follows the forward links of the proof from the genesis block to the latest block. The first link only
+     * points to the genesis block, its roster is taken from the genesis block and not from the link.
+     */
+    private boolean verifyLinks(ByteString chain, SkipBlock genesis, SkipBlock latest) {
+        ByteString known = chain.concat(latest.getProto().getHash());
+        if (trustedBlocks.contains(known)) {
+            return true;
+        }
+        byte[] id = genesis.getHash();
+        List<Point> publics = ForwardLink.publics(genesis.getProto().getRoster());
+        List<SkipBlockProto.ForwardLink> links = proof.getLinksList();
+        for (int i = 0; i < links.size(); i++) {
+            ForwardLink l = new ForwardLink(links.get(i));
+            if (i == 0 && l.getFrom().length == 0) {
+                if (!Arrays.equals(l.getTo(), id)) {
+                    return false;
+                }
+                continue;
+            }
+            if (!Arrays.equals(l.getFrom(), id) || !l.verify(publics)) {
+                return false;
+            }
+            id = l.getTo();
+            if (l.getNewRoster() != null) {
+                publics = ForwardLink.publics(l.getNewRoster());
+            }
+        }
+        if (!Arrays.equals(id, latest.getHash())) {
+            return false;
+        }
+        trustedBlocks.add(known);
+        return true;
+    }
+
+    private static boolean isLeaf(OmniLedgerProto.CollectionProof.Node n) {
+        return !n.hasChildren() ||
+                (isZero(n.getChildren().getLeft()) && isZero(n.getChildren().getRight()));
+    }
+
+    private static boolean isZero(ByteString b) {
+        for (int i = 0; i < b.size(); i++) {
+            if (b.byteAt(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean bit(byte[] buf, int index) {
+        return (buf[index / 8] & (1 << (7 - index % 8))) != 0;
+    }
+
+    /**
+     * Checks that the label of the node is the hash of its content. The
+     * service hashes the node as the protobuf-encoding of
+     * {isLeaf, key, values, leftLabel, rightLabel}, where the key is empty
+     * for interior nodes and the labels are zero for leaves.
+     */
+    private static boolean consistent(ByteString chain, OmniLedgerProto.CollectionProof.Node n) {
+        boolean isLeaf = isLeaf(n);
+        ByteString memo = isLeaf ? null : chain.concat(n.getLabel());
+        if (!isLeaf) {
+            OmniLedgerProto.CollectionProof.Node known = verified.get(memo);
+            if (n.equals(known)) {
+                return true;
+            }
+        }
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            CodedOutputStream out = CodedOutputStream.newInstance(buf);
+            out.writeBool(1, isLeaf);
+            out.writeBytes(2, isLeaf ? n.getKey() : ByteString.EMPTY);
+            for (ByteString v : n.getValuesList()) {
+                out.writeBytes(3, v);
+            }
+            out.writeBytes(4, isLeaf ? zeroLabel : n.getChildren().getLeft());
+            out.writeBytes(5, isLeaf ? zeroLabel : n.getChildren().getRight());
+            out.flush();
+            if (!Arrays.equals(sha256(buf.toByteArray()), n.getLabel().toByteArray())) {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!isLeaf) {
+            verified.put(memo, n);
+        }
+        return true;
+    }
+
+    private static <K, V> Map<K, V> lru(int max) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > max;
+            }
+        });
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
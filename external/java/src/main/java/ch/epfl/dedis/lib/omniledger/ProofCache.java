@@ -0,0 +1,101 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ProofCache keeps the latest verified proofs of an omniledger. A proof is only given out as long as it belongs to
+ * the latest block known to the client and is younger than one block interval, afterwards a new block might have
+ * changed the instance. The least recently used proofs are dropped once the cache is full.
+ */
+class ProofCache {
+    private final int capacity;
+    private final long maxAgeNanos;
+    private final LinkedHashMap<InstanceId, Entry> entries;
+    private int latestIndex = -1;
+
+    /**
+     * @param capacity how many proofs are kept
+     * @param maxAge   how long a proof is given out, usually the block interval
+     */
+    ProofCache(int capacity, Duration maxAge) {
+        this.capacity = capacity;
+        this.maxAgeNanos = maxAge.toNanos();
+        entries = new LinkedHashMap<InstanceId, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<InstanceId, Entry> eldest) {
+                return size() > ProofCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @param id the instance
+     * @return the proof of the instance in the latest block, or null if it is not known
+     */
+    synchronized Proof get(InstanceId id) {
+        Entry e = entries.get(id);
+        if (e == null) {
+            return null;
+        }
+        if (e.index != latestIndex || System.nanoTime() - e.stored > maxAgeNanos) {
+            entries.remove(id);
+            return null;
+        }
+        return e.proof;
+    }
+
+    /**
+     * Stores a verified proof. If the proof has been created in a newer block than the latest known one, all proofs
+     * of older blocks are dropped. Proofs of absence are not stored, as they are usually asked for by a client
+     * waiting for the instance to appear.
+     *
+     * @param id    the instance
+     * @param proof the verified proof of the instance
+     */
+    synchronized void put(InstanceId id, Proof proof) {
+        int index = proof.getLatest().getIndex();
+        advance(index);
+        if (index == latestIndex && proof.matches()) {
+            entries.put(id, new Entry(proof, index));
+        }
+    }
+
+    /**
+     * Drops all proofs of blocks older than the given one.
+     *
+     * @param index the index of the latest block
+     */
+    synchronized void advance(int index) {
+        if (index > latestIndex) {
+            latestIndex = index;
+            entries.clear();
+        }
+    }
+
+    /**
+     * Drops all proofs.
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the index of the latest block seen in a proof, or -1
+     */
+    synchronized int getLatestIndex() {
+        return latestIndex;
+    }
+
+    private static final class Entry {
+        private final Proof proof;
+        private final int index;
+        private final long stored = System.nanoTime();
+
+        private Entry(Proof proof, int index) {
+            this.proof = proof;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * TransactionBatcher collects instructions from many callers and sends them to omniledger in as few
+ * ClientTransactions as possible. A ClientTransaction is sent once it holds maxInstructions instructions, once it
+ * would grow beyond maxBytes, or maxDelay after the first instruction has been submitted, whatever comes first.
+ * <p>
+ * Every caller gets a future that completes once the instance created by its instruction is stored in a block.
+ * The instructions are sent as they have been signed, so their index and length are not changed.
+ * <p>
+ * Omniledger executes a ClientTransaction atomically: if one of its instructions is refused, none of them is
+ * stored. This is the price of batching: one invalid instruction holds back the instructions of all other callers
+ * in its batch, and the failure is only noticed once the batch has been refused by the leader or has not appeared
+ * within maxBlocks blocks. A batch that failed is therefore sent again as one ClientTransaction per instruction, so
+ * that only the invalid instructions fail, and their futures fail with a CothorityCommunicationException that names
+ * the instance of the instruction. This can double the time until a valid instruction of a failed batch is stored.
+ * The batch is not sent again if the leader could not be reached, then all futures fail right away.
+ * <p>
+ * The instructions that are sent again keep the index and length they have been signed with. Instructions that
+ * depend on each other should not be submitted to the same batcher.
+ */
+public class TransactionBatcher implements AutoCloseable {
+    // how many blocks to wait for a batch before giving up.
+    private static final int maxBlocks = 10;
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "omniledger-batcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Function<ClientTransaction, CompletableFuture<Void>> sender;
+    private final Function<InstanceId, CompletableFuture<Proof>> watcher;
+    private final int maxInstructions;
+    private final int maxBytes;
+    private final long maxDelayNanos;
+
+    private List<Pending> queue = new ArrayList<>();
+    private int queueBytes;
+    private ScheduledFuture<?> deadline;
+    private boolean closed;
+    private volatile Consumer<BatchStats> listener;
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong instructionsSent = new AtomicLong();
+
+    private final static Logger logger = LoggerFactory.getLogger(TransactionBatcher.class);
+
+    /**
+     * Creates a new batcher that sends its transactions to the given omniledger.
+     *
+     * @param ol              the omniledger to send the transactions to
+     * @param maxInstructions the maximum number of instructions in a ClientTransaction
+     * @param maxBytes        the maximum size of a ClientTransaction in bytes
+     * @param maxDelay        how long an instruction may wait for other instructions
+     */
+    public TransactionBatcher(OmniledgerRPC ol, int maxInstructions, int maxBytes, Duration maxDelay) {
+        this(ol::sendTransactionAsync, id -> ol.waitForProofAsync(id, Proof::matches, maxBlocks),
+                maxInstructions, maxBytes, maxDelay);
+    }
+
+    TransactionBatcher(Function<ClientTransaction, CompletableFuture<Void>> sender,
+                       Function<InstanceId, CompletableFuture<Proof>> watcher,
+                       int maxInstructions, int maxBytes, Duration maxDelay) {
+        if (maxInstructions < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("a batch must hold at least one instruction");
+        }
+        this.sender = sender;
+        this.watcher = watcher;
+        this.maxInstructions = maxInstructions;
+        this.maxBytes = maxBytes;
+        this.maxDelayNanos = maxDelay.toNanos();
+    }
+
+    /**
+     * Adds a signed instruction to the next ClientTransaction. An instruction that is larger than maxBytes is sent
+     * in a ClientTransaction of its own.
+     *
+     * @param instr   the signed instruction
+     * @param created the instance that is stored by the instruction, it is used to detect the inclusion of the batch
+     * @return a future that completes with created once the instruction has been stored in a block, or with a
+     * CothorityCommunicationException that names created
+     */
+    public CompletableFuture<InstanceId> submit(Instruction instr, InstanceId created) {
+        Pending p = new Pending(instr, created, instr.toProto().getSerializedSize());
+        List<Pending> full = null;
+        List<Pending> batch = null;
+        synchronized (this) {
+            if (closed) {
+                p.result.completeExceptionally(new CothorityCommunicationException("batcher is closed"));
+                return p.result;
+            }
+            if (!queue.isEmpty() && queueBytes + p.bytes > maxBytes) {
+                full = takeQueue();
+            }
+            queue.add(p);
+            queueBytes += p.bytes;
+            if (queue.size() >= maxInstructions || queueBytes >= maxBytes) {
+                batch = takeQueue();
+            } else if (queue.size() == 1) {
+                deadline = scheduler.schedule(this::flush, maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full, true);
+        }
+        if (batch != null) {
+            send(batch, true);
+        }
+        return p.result;
+    }
+
+    /**
+     * Sends the waiting instructions right away.
+     */
+    public void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                return;
+            }
+            batch = takeQueue();
+        }
+        send(batch, true);
+    }
+
+    /**
+     * Sends the waiting instructions and refuses new ones. The futures of the instructions already submitted still
+     * complete.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+    }
+
+    /**
+     * @return how many instructions wait to be sent
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return how many ClientTransactions have been sent, including the ones sent again per instruction
+     */
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    /**
+     * @return how many instructions have been sent, including the ones sent again
+     */
+    public long getInstructionsSent() {
+        return instructionsSent.get();
+    }
+
+    /**
+     * Sets a listener that is called once a batch has been stored in a block, or failed. The instructions of a
+     * failed batch that are sent again are reported as batches of one instruction.
+     *
+     * @param listener is called with the statistics of the batch, null to remove it
+     */
+    public void setListener(Consumer<BatchStats> listener) {
+        this.listener = listener;
+    }
+
+    private List<Pending> takeQueue() {
+        List<Pending> batch = queue;
+        queue = new ArrayList<>();
+        queueBytes = 0;
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+        return batch;
+    }
+
+    /**
+     * Sends the batch and completes the futures of its instructions once it has been stored.
+     *
+     * @param batch the instructions to send
+     * @param split whether to send the instructions again one by one if the batch fails
+     */
+    private void send(List<Pending> batch, boolean split) {
+        List<Instruction> instrs = new ArrayList<>(batch.size());
+        int bytes = 0;
+        for (Pending p : batch) {
+            instrs.add(p.instr);
+            bytes += p.bytes;
+        }
+        int size = bytes;
+        batchesSent.incrementAndGet();
+        instructionsSent.addAndGet(batch.size());
+        long start = System.nanoTime();
+        logger.debug("sending batch of {} instructions and {} bytes", batch.size(), size);
+
+        // as the batch is stored atomically, it is enough to wait for one of its instances.
+        InstanceId representative = batch.get(batch.size() - 1).created;
+        AtomicLong sent = new AtomicLong(-1);
+        sender.apply(new ClientTransaction(instrs)).thenCompose(v -> {
+            sent.set(System.nanoTime());
+            return watcher.apply(representative);
+        }).whenComplete((proof, e) -> {
+            long end = System.nanoTime();
+            if (e == null) {
+                for (Pending p : batch) {
+                    p.result.complete(p.created);
+                }
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                boolean unreachable = sent.get() < 0 && cause instanceof CothorityUnavailableException;
+                if (split && batch.size() > 1 && !unreachable) {
+                    logger.warn("batch of {} instructions failed: {}, sending them one by one", batch.size(),
+                            cause.toString());
+                    for (Pending p : batch) {
+                        send(Collections.singletonList(p), false);
+                    }
+                } else {
+                    logger.warn("batch of {} instructions failed: {}", batch.size(), cause.toString());
+                    for (Pending p : batch) {
+                        p.result.completeExceptionally(new CothorityCommunicationException(
+                                "instruction for instance " + p.created + " failed: " + cause.getMessage(), cause));
+                    }
+                }
+            }
+            Consumer<BatchStats> l = listener;
+            if (l != null) {
+                l.accept(new BatchStats(batch.size(), size, e == null,
+                        (sent.get() < 0 ? end : sent.get()) - start, end - start, getQueueDepth()));
+            }
+        });
+    }
+
+    private static final class Pending {
+        private final Instruction instr;
+        private final InstanceId created;
+        private final int bytes;
+        private final CompletableFuture<InstanceId> result = new CompletableFuture<>();
+
+        private Pending(Instruction instr, InstanceId created, int bytes) {
+            this.instr = instr;
+            this.created = created;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The statistics of one ClientTransaction sent by the batcher.
+     */
+    public static final class BatchStats {
+        private final int instructions;
+        private final int bytes;
+        private final boolean stored;
+        private final long sendNanos;
+        private final long inclusionNanos;
+        private final int queueDepth;
+
+        BatchStats(int instructions, int bytes, boolean stored, long sendNanos, long inclusionNanos, int queueDepth) {
+            this.instructions = instructions;
+            this.bytes = bytes;
+            this.stored = stored;
+            this.sendNanos = sendNanos;
+            this.inclusionNanos = inclusionNanos;
+            this.queueDepth = queueDepth;
+        }
+
+        /**
+         * @return how many instructions were in the batch
+         */
+        public int getInstructions() {
+            return instructions;
+        }
+
+        /**
+         * @return the size of the instructions in bytes
+         */
+        public int getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return true if the batch has been stored, false if it failed
+         */
+        public boolean isStored() {
+            return stored;
+        }
+
+        /**
+         * @return how long it took until the leader accepted the batch
+         */
+        public Duration getSendLatency() {
+            return Duration.ofNanos(sendNanos);
+        }
+
+        /**
+         * @return how long it took until the batch has been stored in a block, or until it failed
+         */
+        public Duration getInclusionLatency() {
+            return Duration.ofNanos(inclusionNanos);
+        }
+
+        /**
+         * @return how many instructions were waiting in the batcher once this batch completed
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return the number of instructions stored per second, from sending to inclusion
+         */
+        public double getThroughput() {
+            if (!stored || inclusionNanos == 0) {
+                return 0;
+            }
+            return instructions * 1e9 / inclusionNanos;
+        }
+    }
+}
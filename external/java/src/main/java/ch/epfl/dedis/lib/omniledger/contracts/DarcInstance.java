@@ -13,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import javax.xml.bind.DatatypeConverter;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * DarcInstance represents an instance of a darc on Omniledger. It is self-
@@ -118,22 +119,19 @@ public class DarcInstance {
      */
     public void evolveDarcAndWait(Darc newDarc, Signer owner) throws CothorityException {
         evolveDarc(newDarc, owner);
-        for (int i = 0; i < 10; i++) {
-            Proof p = ol.getProof(instance.getId());
-            Instance inst = new Instance(p);
+        Proof p = ol.waitForProof(instance.getId(), proof -> {
             try {
-                darc = new Darc(inst.getData());
-                if (darc.getVersion() == newDarc.getVersion()) {
-                    return;
-                }
-                Thread.sleep(ol.getConfig().getBlockInterval().toMillis());
-            } catch (InvalidProtocolBufferException e) {
-                continue;
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+                return proof.matches() && new Darc(proof.getValues().get(0)).getVersion() == newDarc.getVersion();
+            } catch (InvalidProtocolBufferException | CothorityCryptoException e) {
+                return false;
             }
+        }, 10);
+        instance = new Instance(p);
+        try {
+            darc = new Darc(instance.getData());
+        } catch (InvalidProtocolBufferException e) {
+            throw new CothorityCryptoException(e.getMessage());
         }
-        throw new CothorityCommunicationException("didn't find new darc");
     }
 
     /**
@@ -192,30 +190,43 @@ public class DarcInstance {
      */
     public Proof spawnContractAndWait(String contractID, Signer s, List<Argument> args) throws CothorityException {
         TransactionId id = spawnContract(contractID, s, args);
-        InstanceId iid = new InstanceId(id.getId());
-        if (contractID.equals("darc")){
+        InstanceId iid = spawnedInstanceId(contractID, args, new InstanceId(id.getId()));
+        Proof p = ol.waitForInstance(iid, 10);
+        logger.info("Found contract {} at {}", contractID, id);
+        return p;
+    }
+
+    /**
+     * Like spawnContract, but sends the instruction through a batcher, together with the instructions of other
+     * callers.
+     *
+     * @param contractID the id of the contract to create
+     * @param s          the signer that is authorized to spawn this contract
+     * @param args       arguments to give to the contract
+     * @param batcher    the batcher sending the instructions to the same omniledger as this instance
+     * @return a future that completes with the id of the new instance once it is stored
+     * @throws CothorityException
+     */
+    public CompletableFuture<InstanceId> spawnContract(String contractID, Signer s, List<Argument> args,
+                                                       TransactionBatcher batcher) throws CothorityException {
+        Instruction inst = spawnContractInstruction(contractID, s, args, 0, 1);
+        InstanceId iid = spawnedInstanceId(contractID, args, new InstanceId(darc.getBaseId(), new SubId(inst.hash())));
+        return batcher.submit(inst, iid);
+    }
+
+    private static InstanceId spawnedInstanceId(String contractID, List<Argument> args, InstanceId iid)
+            throws CothorityException {
+        if (contractID.equals("darc")) {
             // Special case for a darc, then the resulting instanceId is based
             // on the darc itself.
             try {
                 Darc d = new Darc(args.get(0).getValue());
-                iid = new InstanceId(d.getBaseId(), SubId.zero());
-            } catch (InvalidProtocolBufferException e){
+                return new InstanceId(d.getBaseId(), SubId.zero());
+            } catch (InvalidProtocolBufferException e) {
                 throw new CothorityCommunicationException("this is not a correct darc-spawn");
             }
         }
-        for (int i = 0; i < 10; i++) {
-            Proof p = ol.getProof(iid);
-            if (p.matches()) {
-                logger.info("Found contract {} at {}", contractID, id);
-                return p;
-            }
-            try {
-                Thread.sleep(ol.getConfig().getBlockInterval().toMillis());
-            } catch (InterruptedException e){
-                throw new RuntimeException(e);
-            }
-        }
-        throw new CothorityCommunicationException("Couldn't create new contract-instance");
+        return iid;
     }
 
     /**
@@ -1,5 +1,8 @@
 package ch.epfl.dedis.lib.omniledger.contracts;
 
+import ch.epfl.dedis.lib.ConnectionPool;
+import ch.epfl.dedis.lib.eventlog.EventIterator;
+import ch.epfl.dedis.lib.eventlog.SearchCursor;
 import ch.epfl.dedis.lib.eventlog.SearchResponse;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
 import ch.epfl.dedis.lib.omniledger.darc.DarcId;
@@ -19,6 +22,9 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
 /**
  * EventLogInstance is for interacting with the eventlog contract on OmniLedger.
@@ -52,6 +58,7 @@ public class EventLogInstance {
     private OmniledgerRPC ol;
 
     private final static Logger logger = LoggerFactory.getLogger(EventLogInstance.class);
+    private final static SecureRandom random = new SecureRandom();
 
     /**
      * Constructor for when do you not know the eventlog instance, use this constructor when constructing for the first
@@ -66,11 +73,7 @@ public class EventLogInstance {
         InstanceId id = this.initEventlogInstance(signers, darcId);
 
         // wait for omniledger to commit the transaction in block
-        try {
-            Thread.sleep(5 * ol.getConfig().getBlockInterval().toMillis());
-        } catch (InterruptedException e) {
-            throw new CothorityException(e);
-        }
+        ol.waitForInstance(id, 10);
 
         this.instance = getInstaceProof(id);
     }
@@ -96,9 +99,9 @@ public class EventLogInstance {
      * @throws CothorityException
      */
     public List<InstanceId> log(List<Event> events, List<Signer> signers) throws CothorityException {
-        Pair<ClientTransaction, List<InstanceId>> txAndKeys = makeTx(events, this.instance.getId(), signers);
-        ol.sendTransaction(txAndKeys._1);
-        return txAndKeys._2;
+        ClientTransactionBuilder.Result txAndKeys = makeTx(events, this.instance.getId(), signers);
+        ol.sendTransaction(txAndKeys.getTransaction());
+        return txAndKeys.getInstanceIds();
     }
 
     /**
@@ -114,6 +117,20 @@ public class EventLogInstance {
         return this.log(Arrays.asList(event), signers).get(0);
     }
 
+    /**
+     * Logs an event through a batcher, which sends it together with the events of other callers. Contrary to the
+     * other log functions, the returned future only completes once the event is stored in a block.
+     * @param event the event to log
+     * @param signers a list of signers that has the "invoke:eventlog" permission
+     * @param batcher the batcher sending the events to the same omniledger as this instance
+     * @return a future that completes with the key of the event once it is stored
+     * @throws CothorityCryptoException
+     */
+    public CompletableFuture<InstanceId> log(Event event, List<Signer> signers, TransactionBatcher batcher) throws CothorityCryptoException {
+        ClientTransactionBuilder.Result txAndKeys = makeTx(Arrays.asList(event), this.instance.getId(), signers);
+        return batcher.submit(txAndKeys.getTransaction().getInstructions().get(0), txAndKeys.getInstanceIds().get(0));
+    }
+
     /**
      * Retrieves the stored event by key. An exception is thrown when if the event does not exist.
      * @param key the key for which the event is stored
@@ -141,32 +158,78 @@ public class EventLogInstance {
 
     /**
      * Searches for events based on topic and a time range. If the topic is an empty string, all topics within that
-     * range are returned (from < when <= to). The query may not return all events, this is indicated by the truncated
+     * range are returned (from <= when < to). The query may not return all events, this is indicated by the truncated
      * flag in the return value.
      * @param topic the topic to search, if it is an empty string, all topics are included, we do not support regex
-     * @param from the start of the search range (exclusive).
-     * @param to the end of the search range (inclusive).
+     * @param from the start of the search range (inclusive).
+     * @param to the end of the search range (exclusive), if it is 0, the current time is used.
      * @return a list of events and a flag indicating whether the result is truncated
      * @throws CothorityException
      */
     public SearchResponse search(String topic, long from, long to) throws CothorityException {
+        return ConnectionPool.await(searchAsync(topic, from, to));
+    }
+
+    /**
+     * Searches for all events of a time range, without the limit of a single search request. The events are fetched
+     * page by page while the stream is consumed, in the order of their timestamps. If a page cannot be fetched, the
+     * stream throws an EventSearchException.
+     * @param topic the topic to search, if it is an empty string, all topics are included, we do not support regex
+     * @param from the start of the search range (inclusive).
+     * @param to the end of the search range (exclusive), if it is 0, the current time is used.
+     * @return a lazy stream of the events
+     */
+    public Stream<Event> stream(String topic, long from, long to) {
+        return iterator(SearchCursor.of(topic, from, to)).stream();
+    }
+
+    /**
+     * Searches for all events starting at the cursor, e.g. the one of an earlier search that has been interrupted.
+     * The iterator gives the cursor after every event, as well as the latency and size of every page.
+     * @param cursor where the search starts, use SearchCursor.of for a new search
+     * @return an iterator fetching the events page by page
+     */
+    public EventIterator iterator(SearchCursor cursor) {
+        return EventIterator.paged(cursor, this::searchAsync);
+    }
+
+    /**
+     * Like iterator(cursor), but splits the time range in shards that are searched in parallel. If the roster spreads
+     * read requests, see Roster.setNodeSelector, the shards are searched by different nodes. The events are still
+     * returned in the order of their timestamps.
+     * @param cursor where the search starts, the end of the range must be given
+     * @param shards in how many shards the range is split
+     * @param parallelism how many shards are searched at the same time
+     * @return an iterator fetching the events of the shards in parallel
+     */
+    public EventIterator iterator(SearchCursor cursor, int shards, int parallelism) {
+        return EventIterator.sharded(cursor, shards, parallelism, this::searchAsync);
+    }
+
+    private CompletableFuture<SearchResponse> searchAsync(String topic, long from, long to) {
         // Note: this method is a bit different from the others, we directly use the raw sendMessage instead of via
         // OmniLedgerRPC.
         EventLogProto.SearchRequest.Builder b = EventLogProto.SearchRequest.newBuilder();
-        b.setEventlogid(this.instance.getId().toProto());
-        b.setId(this.ol.getGenesis().getId().toProto());
+        try {
+            b.setEventlogid(this.instance.getId().toProto());
+            b.setId(this.ol.getGenesis().getId().toProto());
+        } catch (CothorityCryptoException e) {
+            CompletableFuture<SearchResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
         b.setTopic(topic);
         b.setFrom(from);
         b.setTo(to);
 
-        ByteString msg =  this.ol.getRoster().sendMessage("EventLog/SearchRequest", b.build());
-
-        try {
-            EventLogProto.SearchResponse resp = EventLogProto.SearchResponse.parseFrom(msg);
-            return new SearchResponse(resp);
-        } catch (InvalidProtocolBufferException e) {
-            throw new CothorityCommunicationException(e);
-        }
+        return this.ol.getRoster().sendMessageAsync("EventLog/SearchRequest", b.build()).thenApply(msg -> {
+            try {
+                EventLogProto.SearchResponse resp = EventLogProto.SearchResponse.parseFrom(msg);
+                return new SearchResponse(resp);
+            } catch (InvalidProtocolBufferException e) {
+                throw new CompletionException(new CothorityCommunicationException(e));
+            }
+        });
     }
 
     /**
@@ -205,39 +268,19 @@ public class EventLogInstance {
         return inst;
     }
 
-    private static final class Pair<A, B> {
-        A _1;
-        B _2;
-
-        private Pair(A a, B b) {
-            this._1 = a;
-            this._2 = b;
-        }
-    }
-
-    private static Pair<ClientTransaction, List<InstanceId>> makeTx(List<Event> events, InstanceId instId, List<Signer> signers) throws CothorityCryptoException {
-        byte[] instrNonce = genNonce();
-        List<Instruction> instrs = new ArrayList<>();
-        List<InstanceId> keys = new ArrayList<>();
-        int idx = 0;
+    private static ClientTransactionBuilder.Result makeTx(List<Event> events, InstanceId instId, List<Signer> signers) throws CothorityCryptoException {
+        ClientTransactionBuilder builder = new ClientTransactionBuilder();
         for (Event e : events) {
             List<Argument> args = new ArrayList<>();
             args.add(new Argument("event", e.toProto().toByteArray()));
-            Invoke invoke = new Invoke("eventlog", args);
-            Instruction instr = new Instruction(instId, instrNonce, idx, events.size(), invoke);
-            instr.signBy(signers);
-            instrs.add(instr);
-            keys.add(instr.deriveId("event"));
-            idx++;
+            builder.invoke(instId, new Invoke("eventlog", args));
         }
-        ClientTransaction tx = new ClientTransaction(instrs);
-        return new Pair(tx, keys);
+        return builder.build(signers, "event");
     }
 
     private static byte[] genNonce()  {
-        SecureRandom sr = new SecureRandom();
         byte[] nonce  = new byte[32];
-        sr.nextBytes(nonce);
+        random.nextBytes(nonce);
         return nonce;
     }
 }
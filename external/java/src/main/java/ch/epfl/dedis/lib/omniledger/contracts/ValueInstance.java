@@ -98,22 +98,8 @@ public class ValueInstance {
      */
     public void evolveValueAndWait(byte[] newValue, Signer owner) throws CothorityException {
         evolveValue(newValue, owner);
-        for (int i = 0; i < 10; i++) {
-            Proof p = ol.getProof(instance.getId());
-            Instance inst = new Instance(p);
-            logger.info("Values are: {} - {}", DatatypeConverter.printHexBinary(inst.getData()),
-                    DatatypeConverter.printHexBinary(newValue));
-            if (Arrays.equals(inst.getData(), newValue)){
-                value = newValue;
-                return;
-            }
-            try{
-                Thread.sleep(ol.getConfig().getBlockInterval().toMillis());
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        }
-        throw new CothorityCommunicationException("couldn't find new value");
+        ol.waitForProof(instance.getId(), p -> p.matches() && Arrays.equals(p.getValues().get(0), newValue), 10);
+        value = newValue;
     }
 
     /**
@@ -41,7 +41,7 @@ public class SignerEd25519 implements Signer {
      * @return
      */
     public byte[] sign(byte[] msg) {
-        SchnorrSig sig = new SchnorrSig(msg, priv);
+        SchnorrSig sig = new SchnorrSig(msg, priv, pub);
         return sig.toBytes();
     }
 
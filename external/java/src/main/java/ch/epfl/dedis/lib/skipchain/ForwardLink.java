@@ -0,0 +1,98 @@
+package ch.epfl.dedis.lib.skipchain;
+
+import ch.epfl.dedis.lib.crypto.CoSi;
+import ch.epfl.dedis.lib.crypto.Ed25519Point;
+import ch.epfl.dedis.lib.crypto.Point;
+import ch.epfl.dedis.proto.RosterProto;
+import ch.epfl.dedis.proto.ServerIdentityProto;
+import ch.epfl.dedis.proto.SkipBlockProto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ForwardLink points from a skipblock to a newer skipblock and is signed collectively by the roster of the older
+ * block. If the roster changes between the two blocks, the new roster is part of the link.
+ */
+public class ForwardLink {
+    private final SkipBlockProto.ForwardLink link;
+
+    public ForwardLink(SkipBlockProto.ForwardLink link) {
+        this.link = link;
+    }
+
+    /**
+     * @return the hash of the block the link starts from
+     */
+    public byte[] getFrom() {
+        return link.getFrom().toByteArray();
+    }
+
+    /**
+     * @return the hash of the block the link points to
+     */
+    public byte[] getTo() {
+        return link.getTo().toByteArray();
+    }
+
+    /**
+     * @return the roster of the block the link points to, or null if it is the same as the roster of the block
+     * the link starts from
+     */
+    public RosterProto.Roster getNewRoster() {
+        return link.hasNewRoster() ? link.getNewRoster() : null;
+    }
+
+    /**
+     * @return true if this is only a placeholder for a higher link
+     */
+    public boolean isEmpty() {
+        return link.getFrom().isEmpty() || link.getTo().isEmpty();
+    }
+
+    /**
+     * @return the message signed by the roster: sha256(from | to | newRoster.id)
+     */
+    public byte[] hash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(getFrom());
+            digest.update(getTo());
+            if (link.hasNewRoster()) {
+                digest.update(link.getNewRoster().getId().toByteArray());
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Verifies that the link has been signed by the given roster, in the same way the skipchain service does.
+     *
+     * @param publics the public keys of the roster of the block the link starts from
+     * @return true if the signature is correct
+     */
+    public boolean verify(List<Point> publics) {
+        byte[] msg = link.getSignature().getMsg().toByteArray();
+        if (!Arrays.equals(msg, hash())) {
+            return false;
+        }
+        return CoSi.verify(publics, msg, link.getSignature().getSig().toByteArray(), CoSi.threshold(publics.size()));
+    }
+
+    /**
+     * @param roster a roster as stored in a skipblock or a forward link
+     * @return the public keys of the nodes of the roster
+     */
+    public static List<Point> publics(RosterProto.Roster roster) {
+        List<Point> ret = new ArrayList<>();
+        for (ServerIdentityProto.ServerIdentity si : roster.getListList()) {
+            ret.add(new Ed25519Point(si.getPublic()));
+        }
+        return ret;
+    }
+}
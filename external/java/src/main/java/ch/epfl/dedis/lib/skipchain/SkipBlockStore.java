@@ -0,0 +1,271 @@
+package ch.epfl.dedis.lib.skipchain;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.SkipblockId;
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import ch.epfl.dedis.lib.exception.CothorityException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SkipBlockStore keeps skipblocks in an append-only log, so that a client doesn't need to download the chain again
+ * after a restart. The log is split in segments that are memory-mapped files in a directory, or buffers on the heap
+ * for a store that is not persisted. The blocks are indexed by their id and by their skipchain and index.
+ * <p>
+ * A block that is stored again with more forward links is appended and replaces the older version. Every record
+ * holds the index, number of forward links, id and skipchain-id of the block in front of the block itself, so
+ * opening a store only reads these headers and doesn't parse the blocks.
+ */
+public class SkipBlockStore implements AutoCloseable {
+    private static final int defaultSegmentSize = 16 << 20;
+    private static final int inMemorySegmentSize = 1 << 20;
+    private static final int idLength = 32;
+    // length, index, number of forward links, id and skipchain-id of the block
+    private static final int headerLength = 4 + 4 + 4 + 2 * idLength;
+    private static final String segmentPrefix = "segment-";
+    private static final String segmentSuffix = ".dat";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final Map<SkipblockId, Location> byId = new HashMap<>();
+    private final Map<SkipblockId, TreeMap<Integer, SkipblockId>> byIndex = new HashMap<>();
+
+    private SkipBlockStore(Path dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the store in the given directory, or creates a new one if the directory is empty.
+     *
+     * @param dir the directory holding the segments
+     * @return the store with all blocks found in the directory
+     * @throws CothorityException if the directory cannot be read
+     */
+    public static SkipBlockStore open(Path dir) throws CothorityException {
+        return open(dir, defaultSegmentSize);
+    }
+
+    /**
+     * Like open, but with a given size of the segments. Blocks bigger than the size get a segment of their own.
+     *
+     * @param dir         the directory holding the segments
+     * @param segmentSize the size of a new segment file in bytes
+     * @return the store with all blocks found in the directory
+     * @throws CothorityException if the directory cannot be read
+     */
+    public static SkipBlockStore open(Path dir, int segmentSize) throws CothorityException {
+        SkipBlockStore store = new SkipBlockStore(dir, segmentSize);
+        try {
+            Files.createDirectories(dir);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, segmentPrefix + "*" + segmentSuffix)) {
+                ds.forEach(files::add);
+            }
+            files.sort(null);
+            for (Path f : files) {
+                try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    store.segments.add(ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size()));
+                }
+            }
+        } catch (IOException e) {
+            throw new CothorityException("couldn't open block store", e);
+        }
+        for (int s = 0; s < store.segments.size(); s++) {
+            store.scan(s);
+        }
+        return store;
+    }
+
+    /**
+     * @return a store that keeps the blocks in memory only
+     */
+    public static SkipBlockStore inMemory() {
+        return new SkipBlockStore(null, inMemorySegmentSize);
+    }
+
+    /**
+     * Stores a block. Nothing is written if the block is already stored with the same or more forward links.
+     *
+     * @param sb the block to store
+     * @throws CothorityException if the block cannot be written
+     */
+    public synchronized void put(SkipBlock sb) throws CothorityException {
+        SkipblockId id = sb.getId();
+        int links = sb.getProto().getForwardCount();
+        Location known = byId.get(id);
+        if (known != null && known.links >= links) {
+            return;
+        }
+        byte[] data = sb.toByteArray();
+
+        ByteBuffer seg = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (seg == null || seg.remaining() < headerLength + data.length) {
+            seg = newSegment(Math.max(segmentSize, headerLength + data.length));
+        }
+        int offset = seg.position();
+        SkipblockId scId = sb.getSkipchainId();
+        seg.position(offset + 4);
+        seg.putInt(sb.getIndex());
+        seg.putInt(links);
+        seg.put(id.getId());
+        seg.put(scId.getId());
+        seg.put(data);
+        // the length is written last, so that a record that has only been written partially is ignored.
+        seg.putInt(offset, data.length);
+        index(new Location(segments.size() - 1, offset + headerLength, data.length, links), sb.getIndex(), id, scId);
+    }
+
+    /**
+     * @param id the id of the block
+     * @return the block or null if it is not stored
+     * @throws CothorityException if the stored block is corrupted
+     */
+    public synchronized SkipBlock get(SkipblockId id) throws CothorityException {
+        Location l = byId.get(id);
+        if (l == null) {
+            return null;
+        }
+        return new SkipBlock(read(l));
+    }
+
+    /**
+     * @param skipchainId the id of the skipchain
+     * @param index       the index of the block in the skipchain
+     * @return the block or null if it is not stored
+     * @throws CothorityException if the stored block is corrupted
+     */
+    public synchronized SkipBlock get(SkipblockId skipchainId, int index) throws CothorityException {
+        TreeMap<Integer, SkipblockId> chain = byIndex.get(skipchainId);
+        if (chain == null || !chain.containsKey(index)) {
+            return null;
+        }
+        return get(chain.get(index));
+    }
+
+    /**
+     * @param skipchainId the id of the skipchain
+     * @return the stored block with the highest index, or null if no block of the skipchain is stored
+     * @throws CothorityException if the stored block is corrupted
+     */
+    public synchronized SkipBlock getLatest(SkipblockId skipchainId) throws CothorityException {
+        TreeMap<Integer, SkipblockId> chain = byIndex.get(skipchainId);
+        if (chain == null || chain.isEmpty()) {
+            return null;
+        }
+        return get(chain.lastEntry().getValue());
+    }
+
+    /**
+     * @return how many different blocks are stored
+     */
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    /**
+     * Writes the segments to the disk.
+     */
+    public synchronized void flush() {
+        for (ByteBuffer seg : segments) {
+            if (seg instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) seg).force();
+            }
+        }
+    }
+
+    /**
+     * Writes the segments to the disk. The store must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        segments.clear();
+        byId.clear();
+        byIndex.clear();
+    }
+
+    private ByteBuffer newSegment(int size) throws CothorityException {
+        ByteBuffer seg;
+        if (dir == null) {
+            seg = ByteBuffer.allocate(size);
+        } else {
+            Path f = dir.resolve(String.format("%s%08d%s", segmentPrefix, segments.size(), segmentSuffix));
+            try (FileChannel ch = FileChannel.open(f, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                seg = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                throw new CothorityException("couldn't create segment", e);
+            }
+        }
+        segments.add(seg);
+        return seg;
+    }
+
+    /**
+     * Reads the headers of all records of a segment and sets its position after the last record.
+     */
+    private void scan(int s) {
+        ByteBuffer seg = segments.get(s);
+        int offset = 0;
+        while (seg.limit() - offset >= headerLength) {
+            int length = seg.getInt(offset);
+            if (length <= 0 || length > seg.limit() - offset - headerLength) {
+                break;
+            }
+            byte[] id = new byte[idLength];
+            byte[] scId = new byte[idLength];
+            seg.position(offset + 12);
+            seg.get(id);
+            seg.get(scId);
+            try {
+                index(new Location(s, offset + headerLength, length, seg.getInt(offset + 8)), seg.getInt(offset + 4),
+                        new SkipblockId(id), new SkipblockId(scId));
+            } catch (CothorityCryptoException e) {
+                break;
+            }
+            offset += headerLength + length;
+        }
+        seg.position(offset);
+    }
+
+    private void index(Location l, int index, SkipblockId id, SkipblockId scId) {
+        byId.put(id, l);
+        byIndex.computeIfAbsent(scId, k -> new TreeMap<>()).put(index, id);
+    }
+
+    private byte[] read(Location l) {
+        ByteBuffer seg = segments.get(l.segment).duplicate();
+        seg.position(l.offset);
+        byte[] data = new byte[l.length];
+        seg.get(data);
+        return data;
+    }
+
+    private static final class Location {
+        private final int segment;
+        private final int offset;
+        private final int length;
+        private final int links;
+
+        private Location(int segment, int offset, int length, int links) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.links = links;
+        }
+    }
+}
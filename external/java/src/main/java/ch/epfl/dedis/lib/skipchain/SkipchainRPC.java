@@ -1,10 +1,13 @@
 package ch.epfl.dedis.lib.skipchain;
 
 import ch.epfl.dedis.lib.Roster;
-import ch.epfl.dedis.lib.ServerIdentity;
 import ch.epfl.dedis.lib.SkipBlock;
 import ch.epfl.dedis.lib.SkipblockId;
+import ch.epfl.dedis.lib.crypto.Point;
 import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import ch.epfl.dedis.lib.exception.CothorityException;
+import ch.epfl.dedis.proto.RosterProto;
 import ch.epfl.dedis.proto.SkipBlockProto;
 import ch.epfl.dedis.proto.SkipchainProto;
 import com.google.protobuf.ByteString;
@@ -12,6 +15,13 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Implementing an interface to the skipchain service.
  */
@@ -23,6 +33,19 @@ public class SkipchainRPC {
     // the roster that holds the current skipchain
     protected Roster roster;
 
+    // the verified blocks of the skipchain
+    private final SkipBlockStore store;
+
+    // blocks that have only been checked to hash to their id, they are never used to follow the skipchain
+    private final Map<SkipblockId, SkipBlock> unverified = Collections.synchronizedMap(
+            new LinkedHashMap<SkipblockId, SkipBlock>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SkipblockId, SkipBlock> eldest) {
+                    return size() > unverifiedCacheSize;
+                }
+            });
+    private static final int unverifiedCacheSize = 64;
+
     private final Logger logger = LoggerFactory.getLogger(SkipchainRPC.class);
 
     /**
@@ -35,38 +58,69 @@ public class SkipchainRPC {
      * @throws CothorityCommunicationException in case of communication difficulties
      */
     public SkipchainRPC(Roster roster, SkipblockId scID) throws CothorityCommunicationException {
+        this(roster, scID, SkipBlockStore.inMemory());
+    }
+
+    /**
+     * Like the constructor above, but keeps the verified blocks in the given store. If the store already holds
+     * blocks of the skipchain, getLatestSkipblock only asks for the blocks after the latest stored block.
+     *
+     * @param roster list of all cothority servers with public keys
+     * @param scID   the getId of the used skipchain
+     * @param store  where the verified blocks are kept
+     * @throws CothorityCommunicationException in case of communication difficulties
+     */
+    public SkipchainRPC(Roster roster, SkipblockId scID, SkipBlockStore store) throws CothorityCommunicationException {
         this.scID = scID;
         this.roster = roster;
+        this.store = store;
     }
 
     /**
-     * Contacts all nodes in the cothority and returns true only if _all_
-     * nodes returned OK.
+     * Contacts all nodes in the cothority in parallel and returns true only
+     * if _all_ nodes returned OK.
      *
      * @return true only if all nodes are OK, else false.
      */
     public boolean verify() {
-        boolean ok = true;
-        for (ServerIdentity n : roster.getNodes()) {
-            logger.info("Testing node {}", n.getAddress());
-            try {
-                n.GetStatus();
-            } catch (CothorityCommunicationException e) {
-                logger.warn("Failing node {}", n.getAddress());
-                ok = false;
-            }
-        }
-        return ok;
+        return roster.checkLiveness();
     }
 
     /**
-     * Returns the skipblock from the skipchain, given its id.
+     * Returns the skipblock from the skipchain, given its id. The block is taken from the store if it is there,
+     * else it is fetched from the roster and checked to hash to its id. A block from the store might miss
+     * forward links that have been added later on, which are updated by getLatestSkipblock.
+     * <p>
+     * A fetched block only goes into the store if it can be trusted: the genesis block of the skipchain, whose id
+     * is the skipchain-id, or a block reached by a verified forward link of a stored block. Other blocks are kept
+     * in a small cache that getLatestSkipblock doesn't use, as nothing proves that the roster signed them.
      *
      * @param id the id of the skipblock
      * @return the proto-representation of the skipblock.
-     * @throws CothorityCommunicationException in case of communication difficulties
+     * @throws CothorityCommunicationException in case of communication difficulties, if the block doesn't hash
+     *                                         to its id or if the store cannot be read or written. The cause
+     *                                         tells them apart.
      */
     public SkipBlock getSkipblock(SkipblockId id) throws CothorityCommunicationException {
+        try {
+            return fetchSkipblock(id);
+        } catch (CothorityCommunicationException e) {
+            throw e;
+        } catch (CothorityException e) {
+            throw new CothorityCommunicationException("couldn't get skipblock " + id + ": " + e.getMessage(), e);
+        }
+    }
+
+    private SkipBlock fetchSkipblock(SkipblockId id) throws CothorityException {
+        SkipBlock stored = store.get(id);
+        if (stored != null) {
+            return stored;
+        }
+        SkipBlock cached = unverified.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
         SkipchainProto.GetSingleBlock request =
                 SkipchainProto.GetSingleBlock.newBuilder().setId(ByteString.copyFrom(id.getId())).build();
 
@@ -74,21 +128,53 @@ public class SkipchainRPC {
                 request);
 
         try {
-            SkipBlockProto.SkipBlock sb = SkipBlockProto.SkipBlock.parseFrom(msg);
-            //TODO: add verification that the skipblock is valid by hashing and comparing to the id
+            SkipBlock sb = new SkipBlock(SkipBlockProto.SkipBlock.parseFrom(msg));
+            verifyHash(sb);
+            if (!sb.getId().equals(id)) {
+                throw new CothorityCryptoException("got block " + sb.getId() + " instead of " + id);
+            }
 
             logger.debug("Got the following skipblock: {}", sb);
             logger.info("Successfully read skipblock");
 
-            return new SkipBlock(sb);
+            if (trusted(sb)) {
+                store.put(sb);
+            } else {
+                unverified.put(id, sb);
+            }
+            return sb;
         } catch (InvalidProtocolBufferException e) {
             throw new CothorityCommunicationException(e);
         }
     }
 
+    /**
+     * Returns the latest skipblock of the skipchain. Only the blocks after the latest block in the store are
+     * fetched. Every block is checked to hash to its id and to be reached by a forward link signed by the roster
+     * of the previous block, so a change of the roster is only accepted if the old roster signed it.
+     *
+     * @return the latest skipblock, or the latest stored block if there are no updates. Only if nothing is stored
+     * and there are no updates, null is returned. Before the store was added, null was returned whenever there
+     * were no updates, so callers don't need to keep the previous block themselves anymore.
+     * @throws CothorityCommunicationException in case of communication difficulties, if a block or a forward link
+     *                                         doesn't verify or if the store cannot be read or written. The cause
+     *                                         tells them apart.
+     */
     public SkipBlock getLatestSkipblock() throws CothorityCommunicationException {
+        try {
+            return fetchLatestSkipblock();
+        } catch (CothorityCommunicationException e) {
+            throw e;
+        } catch (CothorityException e) {
+            throw new CothorityCommunicationException("couldn't update skipchain " + scID + ": " + e.getMessage(), e);
+        }
+    }
+
+    private SkipBlock fetchLatestSkipblock() throws CothorityException {
+        SkipBlock start = store.getLatest(scID);
+        SkipblockId latestID = start == null ? scID : start.getId();
         SkipchainProto.GetUpdateChain request =
-                SkipchainProto.GetUpdateChain.newBuilder().setLatestID(ByteString.copyFrom(scID.getId())).build();
+                SkipchainProto.GetUpdateChain.newBuilder().setLatestID(ByteString.copyFrom(latestID.getId())).build();
 
         ByteString msg = roster.sendMessage("Skipchain/GetUpdateChain",
                 request);
@@ -96,13 +182,20 @@ public class SkipchainRPC {
         try {
             SkipchainProto.GetUpdateChainReply reply =
                     SkipchainProto.GetUpdateChainReply.parseFrom(msg);
-            //TODO: add verification that the skipblock is valid by hashing and comparing to the id
 
             if (reply.getUpdateCount() == 0){
-                logger.info("didn't find any updates to {}", scID);
-                return null;
+                logger.info("didn't find any updates to {}", latestID);
+                return start;
+            }
+            List<SkipBlock> update = new ArrayList<>();
+            for (SkipBlockProto.SkipBlock sb : reply.getUpdateList()) {
+                update.add(new SkipBlock(sb));
             }
-            SkipBlock sb = new SkipBlock(reply.getUpdate(reply.getUpdateCount() - 1));
+            verifyUpdate(latestID, update);
+            for (SkipBlock sb : update) {
+                store.put(sb);
+            }
+            SkipBlock sb = update.get(update.size() - 1);
             logger.info("Got the following latest skipblock: {}", sb);
 
             return sb;
@@ -111,6 +204,92 @@ public class SkipchainRPC {
         }
     }
 
+    /**
+     * @return the store holding the verified blocks of the skipchain
+     */
+    public SkipBlockStore getStore() {
+        return store;
+    }
+
+    /**
+     * Verifies a chain of blocks as returned by GetUpdateChain: the first block must be the one asked for and
+     * every following block must be reached by the highest forward link of the block before.
+     */
+    static void verifyUpdate(SkipblockId latestID, List<SkipBlock> update) throws CothorityCryptoException {
+        SkipBlock prev = null;
+        for (SkipBlock sb : update) {
+            verifyHash(sb);
+            if (prev == null) {
+                if (!sb.getId().equals(latestID)) {
+                    throw new CothorityCryptoException("update doesn't start at " + latestID);
+                }
+            } else {
+                verifyLink(prev, sb);
+            }
+            prev = sb;
+        }
+    }
+
+    /**
+     * @return true if the block is the genesis block of the skipchain, or if a stored block it links back to has a
+     * forward link to it, signed by the roster of the stored block.
+     */
+    private boolean trusted(SkipBlock sb) throws CothorityException {
+        if (sb.getId().equals(scID)) {
+            return true;
+        }
+        if (!sb.getSkipchainId().equals(scID)) {
+            return false;
+        }
+        for (ByteString back : sb.getProto().getBacklinksList()) {
+            SkipBlock from = store.get(new SkipblockId(back.toByteArray()));
+            if (from == null) {
+                continue;
+            }
+            try {
+                verifyLink(from, sb);
+                return true;
+            } catch (CothorityCryptoException e) {
+                logger.debug("no valid forward link from block {}: {}", from.getIndex(), e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private static void verifyHash(SkipBlock sb) throws CothorityCryptoException {
+        if (!Arrays.equals(sb.calculateHash(), sb.getHash())) {
+            throw new CothorityCryptoException("block " + sb.getIndex() + " doesn't hash to its id");
+        }
+    }
+
+    private static void verifyLink(SkipBlock from, SkipBlock to) throws CothorityCryptoException {
+        List<ForwardLink> links = from.getForwardLinks();
+        ForwardLink link = null;
+        for (int i = links.size() - 1; i >= 0 && link == null; i--) {
+            if (Arrays.equals(links.get(i).getTo(), to.getHash())) {
+                link = links.get(i);
+            }
+        }
+        if (link == null) {
+            throw new CothorityCryptoException("no forward link from block " + from.getIndex() +
+                    " to " + to.getIndex());
+        }
+        if (!Arrays.equals(link.getFrom(), from.getHash())) {
+            throw new CothorityCryptoException("forward link of block " + from.getIndex() + " starts somewhere else");
+        }
+        RosterProto.Roster fromRoster = from.getProto().getRoster();
+        RosterProto.Roster toRoster = to.getProto().getRoster();
+        if (!fromRoster.getId().equals(toRoster.getId())) {
+            RosterProto.Roster newRoster = link.getNewRoster();
+            if (newRoster == null || !newRoster.getId().equals(toRoster.getId())) {
+                throw new CothorityCryptoException("roster change to block " + to.getIndex() + " is not signed");
+            }
+        }
+        List<Point> publics = ForwardLink.publics(fromRoster);
+        if (!link.verify(publics)) {
+            throw new CothorityCryptoException("wrong signature on forward link to block " + to.getIndex());
+        }
+    }
 
     public SkipblockId getID() {
         return scID;
@@ -1,16 +1,21 @@
 package ch.epfl.dedis.ocs;
 
 import ch.epfl.dedis.lib.crypto.Encryption;
+import ch.epfl.dedis.lib.crypto.StreamEncryption;
 import ch.epfl.dedis.lib.darc.Darc;
 import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import com.google.protobuf.ByteString;
 
 import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 
 import static ch.epfl.dedis.lib.crypto.Encryption.encryptData;
 
 public class Document {
-    private byte[] dataEncrypted;
+    private ByteString dataEncrypted;
     private byte[] keyMaterial;
     private byte[] dataPublic;
     private WriteRequestId writeRequestId;
@@ -31,6 +36,15 @@ public class Document {
      */
     public Document(byte[] dataEncrypted, byte[] keyMaterial, byte[] dataPublic, Darc readers,
                     WriteRequestId writeRequestId) {
+        this(ByteString.copyFrom(dataEncrypted), keyMaterial, dataPublic, readers, writeRequestId);
+    }
+
+    /**
+     * Like the constructor above, but doesn't copy the encrypted data, so a document read from
+     * the skipchain shares the data with the write request.
+     */
+    Document(ByteString dataEncrypted, byte[] keyMaterial, byte[] dataPublic, Darc readers,
+             WriteRequestId writeRequestId) {
         this.dataEncrypted = dataEncrypted;
         this.keyMaterial = keyMaterial;
         this.dataPublic = dataPublic;
@@ -66,7 +80,31 @@ public class Document {
     public Document(byte[] data, int keylen, Darc readers, byte[] dataPublic) throws CothorityCryptoException {
         Encryption.keyIv key = new Encryption.keyIv(keylen);
         this.keyMaterial = key.getKeyMaterial();
-        this.dataEncrypted = encryptData(data, key.getKeyMaterial());
+        this.dataEncrypted = ByteString.copyFrom(encryptData(data, key.getKeyMaterial()));
+        this.readers = readers;
+        this.dataPublic = dataPublic;
+    }
+
+    /**
+     * Creates a new document from a stream, creates a symmetric symmetricKey and encrypts the
+     * data in chunks using StreamEncryption. The plaintext is not kept in memory as a whole, but
+     * the whole encrypted data is.
+     *
+     * @param data       any data that will be stored encrypted on the skipchain. It is
+     *                   read until its end, but not closed.
+     * @param keylen     how long the symmetric symmetricKey should be, in bytes. Must be 16, 24 or 32.
+     * @param readers    the readers allowed to create a read-request on this document.
+     * @param dataPublic any public data that will not be encrypted
+     * @throws IOException              if the data cannot be read
+     * @throws CothorityCryptoException in the case the encryption doesn't work
+     */
+    public Document(InputStream data, int keylen, Darc readers, byte[] dataPublic) throws IOException,
+            CothorityCryptoException {
+        Encryption.keyIv key = new Encryption.keyIv(keylen);
+        this.keyMaterial = key.getKeyMaterial();
+        ByteString.Output out = ByteString.newOutput();
+        StreamEncryption.encrypt(data, out, keyMaterial);
+        this.dataEncrypted = out.toByteString();
         this.readers = readers;
         this.dataPublic = dataPublic;
     }
@@ -101,19 +139,71 @@ public class Document {
         if (writeRequestId != null) {
             wrid = writeRequestId.equals(otherDoc.writeRequestId);
         }
-        return Arrays.equals(otherDoc.dataEncrypted, dataEncrypted) &&
+        return otherDoc.dataEncrypted.equals(dataEncrypted) &&
                 Arrays.equals(otherDoc.dataPublic, dataPublic) &&
                 Arrays.equals(otherDoc.keyMaterial, keyMaterial) &&
                 otherDoc.readers.equals(readers) &&
                 wrid;
     }
 
+    /**
+     * @return a write request for this document, with a copy of the encrypted data in dataEnc
+     */
     public WriteRequest getWriteRequest() {
+        WriteRequest wr = getSharedWriteRequest();
+        wr.dataEnc = dataEncrypted.toByteArray();
+        return wr;
+    }
+
+    /**
+     * @return a write request that shares the encrypted data with this document, its dataEnc is null
+     */
+    WriteRequest getSharedWriteRequest() {
         return new WriteRequest(dataEncrypted, keyMaterial, readers, dataPublic);
     }
 
     public byte[] getDataEncrypted() {
-        return dataEncrypted;
+        return dataEncrypted.toByteArray();
+    }
+
+    /**
+     * @return the encrypted data, without copying it
+     */
+    public InputStream getDataEncryptedStream() {
+        return dataEncrypted.newInput();
+    }
+
+    /**
+     * Decrypts the data of the document and writes it to out. Documents encrypted with
+     * StreamEncryption are decrypted chunk by chunk, older documents all at once.
+     *
+     * @param out where the decrypted data is written to
+     * @throws IOException              if out fails
+     * @throws CothorityCryptoException if the data cannot be decrypted with the keymaterial
+     */
+    public void decrypt(OutputStream out) throws IOException, CothorityCryptoException {
+        if (StreamEncryption.isStreamEncrypted(dataEncrypted)) {
+            StreamEncryption.decrypt(dataEncrypted.newInput(), out, keyMaterial);
+        } else {
+            out.write(Encryption.decryptData(dataEncrypted, keyMaterial));
+        }
+    }
+
+    /**
+     * Decrypts only a range of the data of the document. This only works for documents
+     * encrypted with StreamEncryption.
+     *
+     * @param from   the first byte of the data to return
+     * @param length how many bytes to return at most
+     * @param out    where the decrypted data is written to
+     * @throws IOException              if out fails
+     * @throws CothorityCryptoException if the data cannot be decrypted with the keymaterial
+     */
+    public void decrypt(long from, long length, OutputStream out) throws IOException, CothorityCryptoException {
+        if (!StreamEncryption.isStreamEncrypted(dataEncrypted)) {
+            throw new CothorityCryptoException("only stream-encrypted documents can be read partially");
+        }
+        StreamEncryption.decrypt(dataEncrypted, from, length, out, keyMaterial);
     }
 
     public byte[] getKeyMaterial() {
@@ -139,7 +229,7 @@ public class Document {
         }
         return String.format("dataEncrypted: %s\ndataPublic: %s\nkeyMaterial: %s\n" +
                         "readers: %s\nwriteRequestId: %s",
-                DatatypeConverter.printHexBinary(dataEncrypted),
+                DatatypeConverter.printHexBinary(getDataEncrypted()),
                 DatatypeConverter.printHexBinary(dataPublic),
                 DatatypeConverter.printHexBinary(keyMaterial),
                 readers.toString(),
@@ -10,6 +10,9 @@ import ch.epfl.dedis.proto.OCSProto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -140,6 +143,30 @@ public class OnchainSecrets extends OnchainSecretsRPC {
         return createWriteRequest(wr, sig);
     }
 
+    /**
+     * Encrypts the data read from the stream chunk by chunk and publishes it as a new document. The
+     * plaintext is never held in memory as a whole, but the encrypted data is: it is sent to the
+     * skipchain in a single request, so publishing is not bounded in memory and the size limit of
+     * a document still applies. The encrypted data is not copied into the dataEnc of the returned
+     * WriteRequest, which is null, use getData instead.
+     *
+     * @param data       the data of the document, read until its end
+     * @param keylen     how long the symmetric key should be, in bytes: 16, 24 or 32.
+     * @param readers    the readers allowed to create a read-request on this document.
+     * @param dataPublic any public data that will be stored unencrypted on the skipchain.
+     * @param writer     one of the authorized writers to the skipchain
+     * @return WriteRequest with the given getId
+     * @throws IOException                     if the data cannot be read
+     * @throws CothorityCryptoException        if the data cannot be encrypted or the writer could not sign
+     * @throws CothorityCommunicationException if the request could not be stored on the skipchain
+     */
+    public WriteRequest publishDocument(InputStream data, int keylen, Darc readers, byte[] dataPublic, Signer writer)
+            throws IOException, CothorityCryptoException, CothorityCommunicationException {
+        WriteRequest wr = new Document(data, keylen, readers, dataPublic).getSharedWriteRequest();
+        DarcSignature sig = wr.getSignature(this, writer);
+        return createWriteRequest(wr, sig);
+    }
+
     /**
      * Creates a read-request, if successful fetches the document from the skipchain and decodes the
      * keymaterial.
@@ -155,15 +182,34 @@ public class OnchainSecrets extends OnchainSecretsRPC {
         if (!(reader instanceof SignerEd25519)) {
             throw new IllegalStateException("getDocument can only be used with SignerEd25519");
         }
-        OCSProto.Write document = getWrite(wrId);
-        Darc readerDarc = new Darc(document.getReader());
+        OCSProto.Write write = getWrite(wrId);
+        Darc readerDarc = new Darc(write.getReader());
 
         ReadRequestId rrid = createReadRequest(new ReadRequest(this, wrId, reader));
         DecryptKey dk = getDecryptionKey(rrid);
-        OCSProto.Write write = getWrite(wrId);
         byte[] keyMaterial = dk.getKeyMaterial(write, reader.getPrivate());
-        return new Document(write.getData().toByteArray(), keyMaterial, write.getExtradata().toByteArray(),
-                readerDarc, wrId);
+        return new Document(write.getData(), keyMaterial, write.getExtradata().toByteArray(), readerDarc, wrId);
+    }
+
+    /**
+     * Creates a read-request, fetches the document from the skipchain and writes its decrypted data
+     * to out, chunk by chunk for documents published from a stream. The encrypted data is fetched
+     * as a whole, but the plaintext is never held in memory.
+     *
+     * @param wrId   the id of the writerequest on the skipchain
+     * @param reader a reader with access to the document
+     * @param out    where the decrypted data is written to
+     * @return the document with decrypted keymaterial
+     * @throws IOException                     if out fails
+     * @throws CothorityCryptoException        if the signer could not sign the request or the
+     *                                         document cannot be decrypted
+     * @throws CothorityCommunicationException if the request could not be stored on the skipchain
+     */
+    public Document getDocument(WriteRequestId wrId, Signer reader, OutputStream out) throws IOException,
+            CothorityCryptoException, CothorityCommunicationException {
+        Document doc = getDocument(wrId, reader);
+        doc.decrypt(out);
+        return doc;
     }
 
     /**
@@ -184,8 +230,26 @@ public class OnchainSecrets extends OnchainSecretsRPC {
         DarcSignature sig = new DarcSignature(kp.point.toBytes(), readerDarc, reader, SignaturePath.USER);
         DecryptKey dk = getDecryptionKeyEphemeral(rrId, sig, kp.point);
         byte[] keyMaterial = dk.getKeyMaterial(write, kp.scalar);
-        return new Document(write.getData().toByteArray(), keyMaterial, write.getExtradata().toByteArray(),
-                readerDarc, wrId);
+        return new Document(write.getData(), keyMaterial, write.getExtradata().toByteArray(), readerDarc, wrId);
+    }
+
+    /**
+     * Creates a read-request with an ephemeral key and writes the decrypted data of the document to
+     * out, chunk by chunk for documents published from a stream.
+     *
+     * @param wrId   the id of the write request
+     * @param reader a reader with access to the document
+     * @param out    where the decrypted data is written to
+     * @return the document, holding only the encrypted data
+     * @throws IOException                     if out fails
+     * @throws CothorityCryptoException        if the document cannot be decrypted
+     * @throws CothorityCommunicationException in case of communication difficulties
+     */
+    public Document readDocument(WriteRequestId wrId, Signer reader, OutputStream out) throws IOException,
+            CothorityCryptoException, CothorityCommunicationException {
+        Document doc = getDocumentEphemeral(wrId, reader);
+        doc.decrypt(out);
+        return doc;
     }
 
 
@@ -1,7 +1,6 @@
 package ch.epfl.dedis.ocs;
 
 import ch.epfl.dedis.lib.Roster;
-import ch.epfl.dedis.lib.ServerIdentity;
 import ch.epfl.dedis.lib.SkipblockId;
 import ch.epfl.dedis.lib.crypto.Ed25519Point;
 import ch.epfl.dedis.lib.crypto.Point;
@@ -87,23 +86,13 @@ public class OnchainSecretsRPC {
     }
 
     /**
-     * Contacts all nodes in the cothority and returns true only if _all_
-     * nodes returned OK.
+     * Contacts all nodes in the cothority in parallel and returns true only
+     * if _all_ nodes returned OK.
      *
      * @return true only if all nodes are OK, else false.
      */
     public boolean verify() {
-        boolean ok = true;
-        for (ServerIdentity n : roster.getNodes()) {
-            logger.info("Testing node {}", n.getAddress());
-            try {
-                n.GetStatus();
-            } catch (CothorityCommunicationException e) {
-                logger.warn("Failing node {}", n.getAddress());
-                ok = false;
-            }
-        }
-        return ok;
+        return roster.checkLiveness();
     }
 
     /**
@@ -27,8 +27,12 @@ import static ch.epfl.dedis.lib.crypto.Encryption.encryptData;
 
 public class WriteRequest {
     // dataEnc is the encrypted data that can be decrypted using the
-    // keyMaterial.
+    // keyMaterial. It is null if the request has been created from a
+    // ByteString, use getData then.
     public byte[] dataEnc;
+    // data is the encrypted data if it has been given as a ByteString, so
+    // that large documents are not copied.
+    private ByteString data;
     // keyMaterial holds the symmetric symmetricKey and eventually an IV for the
     // encryption.
     public byte[] keyMaterial;
@@ -53,6 +57,7 @@ public class WriteRequest {
     public WriteRequest(WriteRequest wr) {
         id = wr.id;
         dataEnc = wr.dataEnc;
+        data = wr.data;
         extraData = wr.extraData;
         keyMaterial = wr.keyMaterial;
         owner = wr.owner;
@@ -111,6 +116,35 @@ public class WriteRequest {
         this.extraData = extraData;
     }
 
+    /**
+     * Like the constructor above, but with the encrypted data in a
+     * ByteString, which is not copied. This is used for documents that
+     * have been encrypted with StreamEncryption.
+     *
+     * @param data        the already encrypted data
+     * @param keyMaterial the symmetric symmetricKey plus eventually an IV
+     * @param owner       the owner is allowed to give access to the document
+     * @param extraData   data that will _not be encrypted_ but will be
+     *                    visible in cleartext on the skipchain
+     */
+    public WriteRequest(ByteString data, byte[] keyMaterial, Darc owner,
+                        byte[] extraData) {
+        this.data = data;
+        this.keyMaterial = keyMaterial;
+        this.owner = owner;
+        this.extraData = extraData;
+    }
+
+    /**
+     * @return the encrypted data
+     */
+    public ByteString getData() {
+        if (data != null) {
+            return data;
+        }
+        return ByteString.copyFrom(dataEnc);
+    }
+
     /**
      * Returns a protobuf-formatted block that can be sent to the cothority
      * for storage on the skipchain. The data and the keyMaterial will be
@@ -127,14 +161,15 @@ public class WriteRequest {
         write.setReader(owner.toProto());
 
         try {
-            write.setData(ByteString.copyFrom(dataEnc));
+            write.setData(getData());
 
             KeyPair randkp = new KeyPair();
             Scalar r = randkp.scalar;
             Point U = randkp.point;
             write.setU(U.toProto());
 
-            Point C = X.mul(r);
+            // X is the key of the ocs-shard, so its table is kept for the next requests
+            Point C = new Ed25519Point(X).mul(r, true);
             List<Point> Cs = new ArrayList<>();
             for (int from = 0; from < keyMaterial.length; from += Ed25519.pubLen) {
                 int to = from + Ed25519.pubLen;
@@ -0,0 +1,105 @@
+package ch.epfl.dedis.lib;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityTimeoutException;
+import ch.epfl.dedis.lib.exception.CothorityUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+    private EchoServer server;
+    private ConnectionPool pool;
+    private URI echo;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = EchoServer.startNew();
+        echo = new URI("ws://127.0.0.1:" + server.getPort() + "/Test/Echo");
+        pool = new ConnectionPool(2, 8);
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        pool.close();
+        server.stop();
+    }
+
+    @Test
+    void reusesConnection() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            byte[] reply = ConnectionPool.await(pool.send(echo, ("msg" + i).getBytes()));
+            assertEquals("msg" + i, new String(reply));
+        }
+        assertEquals(1, pool.connectionCount(echo));
+        assertEquals(1, server.getOpened());
+    }
+
+    @Test
+    void matchesConcurrentReplies() throws Exception {
+        List<CompletableFuture<byte[]>> replies = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            replies.add(pool.send(echo, ("msg" + i).getBytes()));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("msg" + i, new String(replies.get(i).get(5, TimeUnit.SECONDS)));
+        }
+        assertTrue(pool.connectionCount(echo) <= 2);
+    }
+
+    @Test
+    void errorOnlyFailsItsRequest() throws Exception {
+        ConnectionPool single = new ConnectionPool(1, 10);
+        CompletableFuture<byte[]> before = single.send(echo, "before".getBytes());
+        CompletableFuture<byte[]> failing = single.send(echo, "fail".getBytes());
+        CompletableFuture<byte[]> after = single.send(echo, "after".getBytes());
+
+        assertEquals("before", new String(before.get(5, TimeUnit.SECONDS)));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof CothorityCommunicationException);
+        assertEquals("failed on purpose", e.getCause().getMessage());
+        assertEquals("after", new String(after.get(5, TimeUnit.SECONDS)));
+        single.close();
+    }
+
+    @Test
+    void serverIdentity() throws Exception {
+        ServerIdentity si = server.serverIdentity();
+        assertEquals("sync", new String(si.SendMessage("Test/Echo", "sync".getBytes())));
+        assertEquals("async", new String(si.sendMessageAsync("Test/Echo", "async".getBytes()).get()));
+        assertThrows(CothorityCommunicationException.class, () -> si.SendMessage("Test/Echo", "fail".getBytes()));
+    }
+
+    @Test
+    void timeout() throws Exception {
+        ConnectionPool single = new ConnectionPool(1, 10, 300, TimeUnit.MILLISECONDS);
+        CompletableFuture<byte[]> hanging = single.send(echo, "hang".getBytes());
+        Thread.sleep(150);
+        CompletableFuture<byte[]> after = single.send(echo, "after".getBytes());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> hanging.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof CothorityTimeoutException);
+        // the connection of the hanging request is closed and the request behind it is sent again
+        assertEquals("after", new String(after.get(5, TimeUnit.SECONDS)));
+        assertEquals(2, server.getOpened());
+        single.close();
+
+        CompletableFuture<byte[]> never = new CompletableFuture<>();
+        assertThrows(CothorityTimeoutException.class, () -> ConnectionPool.await(never, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void unreachable() throws Exception {
+        server.stop();
+        assertThrows(CothorityUnavailableException.class, () -> ConnectionPool.await(pool.send(echo, "lost".getBytes())));
+    }
+}
@@ -0,0 +1,113 @@
+package ch.epfl.dedis.lib;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local websocket server that replies with the received message, or closes the connection with an
+ * error if the message is "fail" - like a conode does when a service returns an error. The message
+ * "hang" makes the server stop replying on that connection, like a conode that hangs.
+ */
+class EchoServer extends WebSocketServer {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger messages = new AtomicInteger();
+    private final Set<WebSocket> hung = ConcurrentHashMap.newKeySet();
+    private volatile long delayMillis;
+
+    private EchoServer(int port) {
+        super(new InetSocketAddress("127.0.0.1", port));
+    }
+
+    /**
+     * Starts a server on a free port and waits until it accepts connections.
+     */
+    static EchoServer startNew() throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        EchoServer server = new EchoServer(port);
+        server.start();
+        if (!server.started.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("server didn't start");
+        }
+        return server;
+    }
+
+    /**
+     * @return a ServerIdentity pointing to this server - it connects to the port above its address.
+     */
+    ServerIdentity serverIdentity() throws Exception {
+        return new ServerIdentity(new URI("tcp://127.0.0.1:" + (getPort() - 1)),
+                "8EDCBA0ACD1930F46D7293F6F6FDCE71A8DBFD7C5056C333DA2F20530AF930D5");
+    }
+
+    void setDelay(long millis) {
+        delayMillis = millis;
+    }
+
+    int getOpened() {
+        return opened.get();
+    }
+
+    int getMessages() {
+        return messages.get();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        opened.incrementAndGet();
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        messages.incrementAndGet();
+        byte[] buf = new byte[message.remaining()];
+        message.get(buf);
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+        if (new String(buf).equals("hang") || hung.contains(conn)) {
+            hung.add(conn);
+            return;
+        }
+        if (new String(buf).equals("fail")) {
+            conn.close(4000, "failed on purpose");
+        } else {
+            conn.send(buf);
+        }
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+}
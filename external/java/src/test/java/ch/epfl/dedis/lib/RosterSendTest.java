@@ -0,0 +1,137 @@
+package ch.epfl.dedis.lib;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityUnavailableException;
+import ch.epfl.dedis.proto.SkipchainProto;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RosterSendTest {
+    private List<EchoServer> servers = new ArrayList<>();
+    private Roster roster;
+    private SkipchainProto.GetSingleBlock request =
+            SkipchainProto.GetSingleBlock.newBuilder().setId(ByteString.copyFromUtf8("block")).build();
+
+    @BeforeEach
+    void startServers() throws Exception {
+        List<ServerIdentity> nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            EchoServer s = EchoServer.startNew();
+            servers.add(s);
+            nodes.add(s.serverIdentity());
+        }
+        roster = new Roster(nodes);
+    }
+
+    @AfterEach
+    void stopServers() throws Exception {
+        for (EchoServer s : servers) {
+            s.stop();
+        }
+    }
+
+    @Test
+    void readsGoToLeader() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            roster.sendMessage("Skipchain/GetSingleBlock", request);
+        }
+        assertEquals(5, servers.get(0).getMessages());
+        assertEquals(0, servers.get(1).getMessages());
+    }
+
+    @Test
+    void roundRobin() throws Exception {
+        roster.setNodeSelector(new NodeSelector.RoundRobin());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(request.toByteString(), roster.sendMessage("Skipchain/GetSingleBlock", request));
+        }
+        for (EchoServer s : servers) {
+            assertEquals(10, s.getMessages());
+        }
+    }
+
+    @Test
+    void writesGoToLeader() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            roster.sendMessage("OmniLedger/AddTxRequest", request);
+        }
+        assertEquals(5, servers.get(0).getMessages());
+        assertEquals(0, servers.get(1).getMessages());
+    }
+
+    @Test
+    void failover() throws Exception {
+        servers.get(0).stop();
+        roster.setNodeSelector(new NodeSelector.LeastOutstanding());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(request.toByteString(), roster.sendMessage("Skipchain/GetSingleBlock", request));
+        }
+        assertFalse(HealthTracker.getShared().get(roster.getNodes().get(0)).isHealthy());
+        assertFalse(roster.checkLiveness());
+    }
+
+    @Test
+    void serviceErrorKeepsNodeHealthy() throws Exception {
+        ServerIdentity si = roster.getNodes().get(1);
+        CothorityCommunicationException e = assertThrows(CothorityCommunicationException.class,
+                () -> si.SendMessage("Skipchain/GetSingleBlock", "fail".getBytes()));
+        assertFalse(e instanceof CothorityUnavailableException);
+        assertTrue(HealthTracker.getShared().get(si).isHealthy());
+    }
+
+    @Test
+    void hedging() throws Exception {
+        // always prefer the first node.
+        roster.setNodeSelector((nodes, health) -> nodes);
+        for (int i = 0; i < 10; i++) {
+            roster.sendMessage("Skipchain/GetSingleBlock", request);
+        }
+        servers.get(0).setDelay(5000);
+        roster.setHedging(90);
+        long start = System.currentTimeMillis();
+        assertEquals(request.toByteString(), roster.sendMessage("Skipchain/GetSingleBlock", request));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, servers.get(1).getMessages());
+    }
+
+    @Test
+    void liveness() {
+        assertTrue(roster.checkLiveness());
+    }
+
+    @Test
+    void healthPercentile() {
+        NodeHealth h = new NodeHealth();
+        assertEquals(-1, h.getPercentileNanos(50));
+        for (int i = 0; i < 10; i++) {
+            h.succeeded(h.started());
+        }
+        assertTrue(h.getPercentileNanos(50) >= 0);
+        assertEquals(0, h.getOutstanding());
+        h.failed(h.started());
+        assertFalse(h.isHealthy());
+    }
+
+    @Test
+    void healthCountsTimeouts() throws Exception {
+        NodeHealth h = new NodeHealth();
+        h.succeeded(h.started());
+        double fast = h.getEwmaNanos();
+        long hanging = h.started();
+        Thread.sleep(20);
+        // the outstanding request counts before it times out
+        assertTrue(h.getExpectedNanos() >= 20_000_000);
+        h.timedOut(hanging);
+        assertFalse(h.isHealthy());
+        assertEquals(0, h.getOutstanding());
+        assertTrue(h.getEwmaNanos() > fast);
+        assertEquals(h.getEwmaNanos(), h.getExpectedNanos());
+    }
+}
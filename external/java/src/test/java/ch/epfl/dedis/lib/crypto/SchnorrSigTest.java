@@ -0,0 +1,104 @@
+package ch.epfl.dedis.lib.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchnorrSigTest {
+    @Test
+    void multiScalarMul() {
+        for (int n = 1; n <= 5; n++) {
+            List<Scalar> scalars = new ArrayList<>();
+            List<Point> points = new ArrayList<>();
+            Point expected = null;
+            for (int i = 0; i < n; i++) {
+                Scalar s = new KeyPair().scalar;
+                Point p = new KeyPair().point;
+                scalars.add(s);
+                points.add(p);
+                expected = expected == null ? p.mul(s) : expected.add(p.mul(s));
+            }
+            assertTrue(expected.equals(Ed25519Point.multiScalarMul(scalars, points)));
+        }
+    }
+
+    @Test
+    void multiScalarMulEdgeCases() {
+        Point p = new KeyPair().point;
+        Scalar one = new Ed25519Scalar(new byte[32]).addOne();
+        assertTrue(p.equals(Ed25519Point.multiScalarMul(Collections.singletonList(one), Collections.singletonList(p))));
+
+        // the prime order minus one
+        Scalar max = new Ed25519Scalar("ECD3F55C1A631258D69CF7A2DEF9DE1400000000000000000000000000000010", false);
+        assertTrue(p.mul(max).equals(Ed25519Point.multiScalarMul(Collections.singletonList(max),
+                Collections.singletonList(p))));
+        assertTrue(p.negate().equals(Ed25519Point.multiScalarMul(Collections.singletonList(max),
+                Collections.singletonList(p))));
+    }
+
+    @Test
+    void mulWithCachedTable() {
+        KeyPair kp = new KeyPair();
+        Scalar s = new KeyPair().scalar;
+        // the second multiplication uses the table of the first one.
+        Ed25519Point remembered = (Ed25519Point) kp.point;
+        Point first = remembered.mul(s, true);
+        assertTrue(first.equals(new Ed25519Point(kp.point.toBytes()).mul(s, true)));
+        assertTrue(first.equals(new Ed25519Point(kp.point.toBytes()).mul(s)));
+        assertTrue(first.equals(Ed25519Point.base().mul(kp.scalar.mul(s))));
+
+        // only the tables of remembered points are shared between copies
+        assertSame(remembered.fixedBase(true), new Ed25519Point(kp.point.toBytes()).fixedBase(true));
+        Ed25519Point other = (Ed25519Point) new KeyPair().point;
+        other.mul(s);
+        assertNotSame(other.fixedBase(false), new Ed25519Point(other.toBytes()).fixedBase(true));
+    }
+
+    @Test
+    void verifyAgainstPoints() {
+        byte[] msg = "batch".getBytes();
+        KeyPair kp = new KeyPair();
+        SchnorrSig sig = new SchnorrSig(msg, kp.scalar);
+        assertTrue(sig.verify(msg, kp.point));
+        // the verification as it is written in the paper.
+        Point S = Ed25519Point.base().mul(sig.response);
+        Point RAs = sig.challenge.add(kp.point.mul(sig.toHash(sig.challenge, kp.point, msg)));
+        assertTrue(S.equals(RAs));
+
+        assertFalse(sig.verify("other".getBytes(), kp.point));
+        assertFalse(sig.verify(msg, new KeyPair().point));
+        assertTrue(new SchnorrSig(sig.toBytes()).verify(msg, kp.point));
+    }
+
+    @Test
+    void verifyBatch() {
+        List<byte[]> msgs = new ArrayList<>();
+        List<Point> pubs = new ArrayList<>();
+        List<SchnorrSig> sigs = new ArrayList<>();
+        List<KeyPair> roster = Arrays.asList(new KeyPair(), new KeyPair(), new KeyPair());
+        for (int i = 0; i < 20; i++) {
+            KeyPair kp = roster.get(i % roster.size());
+            byte[] msg = ("message " + i).getBytes();
+            msgs.add(msg);
+            pubs.add(kp.point);
+            sigs.add(new SchnorrSig(msg, kp.scalar));
+        }
+        assertEquals(Collections.emptyList(), SchnorrSig.verifyBatch(msgs, pubs, sigs));
+        assertEquals(Collections.emptyList(), SchnorrSig.verifyBatch(new ArrayList<>(), new ArrayList<>(),
+                new ArrayList<>()));
+
+        // a wrong message, and a signature by another key
+        msgs.set(3, "forged".getBytes());
+        sigs.set(11, new SchnorrSig(msgs.get(11), new KeyPair().scalar));
+        List<Integer> wrong = SchnorrSig.verifyBatch(msgs, pubs, sigs);
+        assertEquals(Arrays.asList(3, 11), wrong);
+        for (int i = 0; i < sigs.size(); i++) {
+            assertEquals(!wrong.contains(i), sigs.get(i).verify(msgs.get(i), pubs.get(i)));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ch.epfl.dedis.lib.crypto;
+
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamEncryptionTest {
+    private final byte[] keyMaterial = new Encryption.keyIv(16).getKeyMaterial();
+
+    @Test
+    void roundTrip() throws Exception {
+        for (int length : new int[]{0, 1, 99, 100, 101, 350}) {
+            byte[] data = data(length);
+            byte[] enc = encrypt(data, 100);
+            assertEquals(StreamEncryption.encryptedLength(length, 100), enc.length);
+            assertTrue(StreamEncryption.isStreamEncrypted(ByteString.copyFrom(enc)));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamEncryption.decrypt(new ByteArrayInputStream(enc), out, keyMaterial);
+            assertArrayEquals(data, out.toByteArray());
+        }
+    }
+
+    @Test
+    void range() throws Exception {
+        byte[] data = data(1000);
+        ByteString enc = ByteString.copyFrom(encrypt(data, 64));
+        int[][] ranges = {{0, 1000}, {0, 10}, {63, 2}, {64, 64}, {500, 300}, {990, 100}, {1000, 10}};
+        for (int[] r : ranges) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StreamEncryption.decrypt(enc, r[0], r[1], out, keyMaterial);
+            int end = Math.min(data.length, r[0] + r[1]);
+            assertArrayEquals(Arrays.copyOfRange(data, r[0], end), out.toByteArray());
+        }
+    }
+
+    @Test
+    void fileChannel() throws Exception {
+        Path plain = Files.createTempFile("plain", ".dat");
+        Path enc = Files.createTempFile("enc", ".dat");
+        try {
+            byte[] data = data(5000);
+            Files.write(plain, data);
+            try (FileChannel in = FileChannel.open(plain, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(enc, StandardOpenOption.WRITE)) {
+                StreamEncryption.encrypt(in, out, keyMaterial, 512);
+            }
+            try (FileChannel in = FileChannel.open(enc, StandardOpenOption.READ)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                StreamEncryption.decrypt(in, 1000, 2000, out, keyMaterial);
+                assertArrayEquals(Arrays.copyOfRange(data, 1000, 3000), out.toByteArray());
+            }
+        } finally {
+            Files.delete(plain);
+            Files.delete(enc);
+        }
+    }
+
+    @Test
+    void changedData() throws Exception {
+        byte[] enc = encrypt(data(300), 100);
+        enc[StreamEncryption.headerLength + 150] ^= 1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(CothorityCryptoException.class, () ->
+                StreamEncryption.decrypt(new ByteArrayInputStream(enc), out, keyMaterial));
+        // the first chunk is still fine
+        StreamEncryption.decrypt(ByteString.copyFrom(enc), 0, 100, out, keyMaterial);
+        assertThrows(CothorityCryptoException.class, () ->
+                StreamEncryption.decrypt(ByteString.copyFrom(enc), 100, 100, out, keyMaterial));
+
+        byte[] otherKey = new Encryption.keyIv(16).getKeyMaterial();
+        assertThrows(CothorityCryptoException.class, () ->
+                StreamEncryption.decrypt(new ByteArrayInputStream(encrypt(data(10), 100)), out, otherKey));
+    }
+
+    @Test
+    void cutData() throws Exception {
+        byte[] enc = encrypt(data(300), 100);
+        // dropping the last chunk must be detected, even though the rest is authentic.
+        byte[] cut = Arrays.copyOf(enc, StreamEncryption.headerLength + 2 * (100 + StreamEncryption.tagLength));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(CothorityCryptoException.class, () ->
+                StreamEncryption.decrypt(new ByteArrayInputStream(cut), out, keyMaterial));
+        assertThrows(CothorityCryptoException.class, () ->
+                StreamEncryption.decrypt(ByteString.copyFrom(cut), 150, 50, out, keyMaterial));
+    }
+
+    @Test
+    void hugeChunkSize() throws Exception {
+        byte[] enc = encrypt(data(10), 100);
+        // the chunk size follows the marker in the header
+        ByteBuffer.wrap(enc).putInt(5, Integer.MAX_VALUE - 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(CothorityCryptoException.class, () ->
+                StreamEncryption.decrypt(new ByteArrayInputStream(enc), out, keyMaterial));
+        assertThrows(CothorityCryptoException.class, () ->
+                StreamEncryption.decrypt(ByteString.copyFrom(enc), 0, 10, out, keyMaterial));
+        assertThrows(IllegalArgumentException.class, () ->
+                encrypt(data(10), StreamEncryption.maxChunkSize + 1));
+    }
+
+    @Test
+    void keyMaterialIsUsed() throws Exception {
+        byte[] enc = encrypt(data(32), 100);
+        // only the key differs, the part of the iv is the same
+        byte[] otherKey = new Encryption.keyIv(16).getKeyMaterial();
+        System.arraycopy(keyMaterial, 0, otherKey, 0, Encryption.ivLength);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(CothorityCryptoException.class, () ->
+                StreamEncryption.decrypt(new ByteArrayInputStream(enc), out, otherKey));
+    }
+
+    private byte[] encrypt(byte[] data, int chunkSize) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamEncryption.encrypt(new ByteArrayInputStream(data), out, keyMaterial, chunkSize);
+        return out.toByteArray();
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
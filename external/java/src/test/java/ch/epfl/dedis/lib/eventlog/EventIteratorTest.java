@@ -0,0 +1,248 @@
+package ch.epfl.dedis.lib.eventlog;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityException;
+import ch.epfl.dedis.proto.EventLogProto;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventIteratorTest {
+    /**
+     * Answers like Search of the eventlog service: the events of the range from <= when < to in the order they have
+     * been logged, truncated after limit events.
+     */
+    private static final class Service implements EventIterator.Fetcher {
+        private final List<Event> events = new ArrayList<>();
+        private final List<long[]> requests = new ArrayList<>();
+        private final int limit;
+
+        private Service(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized CompletableFuture<SearchResponse> fetch(String topic, long from, long to) {
+            requests.add(new long[]{from, to});
+            EventLogProto.SearchResponse.Builder reply = EventLogProto.SearchResponse.newBuilder().setTruncated(false);
+            for (Event e : events) {
+                if (e.getWhen() < from || e.getWhen() >= to || (!topic.isEmpty() && !topic.equals(e.getTopic()))) {
+                    continue;
+                }
+                reply.addEvents(e.toProto());
+                // the service marks a full page as truncated, even if there are no more events
+                if (reply.getEventsCount() >= limit) {
+                    reply.setTruncated(true);
+                    break;
+                }
+            }
+            return CompletableFuture.completedFuture(new SearchResponse(reply.build()));
+        }
+    }
+
+    @Test
+    void paged() {
+        Service s = new Service(10);
+        for (int i = 1; i <= 95; i++) {
+            s.events.add(new Event(i, i % 2 == 0 ? "even" : "odd", "event " + i));
+        }
+        EventIterator it = EventIterator.paged(SearchCursor.of("", 0, 1000), s);
+        List<Event> all = it.stream().collect(Collectors.toList());
+        assertEquals(s.events, all);
+        assertTrue(it.getCursor().isDone());
+        // every page but the first starts again at the latest event of the page before
+        assertEquals(11, it.getMetrics().getPages());
+        assertEquals(10, it.getMetrics().getTruncatedPages());
+
+        // the start of the range is included, the end is not
+        List<Event> odd = EventIterator.paged(SearchCursor.of("odd", 20, 40), s).stream()
+                .collect(Collectors.toList());
+        assertEquals(10, odd.size());
+        assertEquals(21, odd.get(0).getWhen());
+        assertEquals(39, odd.get(9).getWhen());
+        List<Event> even = EventIterator.paged(SearchCursor.of("even", 20, 40), s).stream()
+                .collect(Collectors.toList());
+        assertEquals(10, even.size());
+        assertEquals(20, even.get(0).getWhen());
+        assertEquals(38, even.get(9).getWhen());
+    }
+
+    @Test
+    void rangeLimits() {
+        Service s = new Service(3);
+        for (long when : new long[]{9, 10, 10, 11, 19, 20, 20, 21}) {
+            s.events.add(new Event(when, "t", "at " + when));
+        }
+        // events on from are returned, events on to are not
+        List<Event> all = EventIterator.paged(SearchCursor.of("", 10, 20), s).stream().collect(Collectors.toList());
+        assertEquals(s.events.subList(1, 5), all);
+        List<Event> sharded = EventIterator.sharded(SearchCursor.of("", 10, 20), 2, 2, s).stream()
+                .collect(Collectors.toList());
+        assertEquals(s.events.subList(1, 5), sharded);
+    }
+
+    @Test
+    void shardBoundaries() {
+        Service s = new Service(3);
+        // two events on every boundary between the shards, which are 0-25, 25-50, 50-75 and 75-100
+        for (long when = 0; when <= 100; when += 25) {
+            s.events.add(new Event(when, "t", "first at " + when));
+            s.events.add(new Event(when, "t", "second at " + when));
+            s.events.add(new Event(when + 1, "t", "after " + when));
+        }
+        List<Event> all = EventIterator.sharded(SearchCursor.of("", 0, 100), 4, 2, s).stream()
+                .collect(Collectors.toList());
+        // everything but the events at 100 and later
+        assertEquals(s.events.subList(0, 12), all);
+    }
+
+    @Test
+    void sameTimestampOverPages() {
+        Service s = new Service(4);
+        // three events at the same time, two of them identical, split over the pages
+        s.events.add(new Event(1, "t", "a"));
+        s.events.add(new Event(2, "t", "b"));
+        s.events.add(new Event(5, "t", "x0"));
+        s.events.add(new Event(5, "t", "x1"));
+        s.events.add(new Event(5, "t", "x0"));
+        s.events.add(new Event(9, "t", "c"));
+        List<Event> all = EventIterator.paged(SearchCursor.of("", 0, 10), s).stream().collect(Collectors.toList());
+        assertEquals(s.events, all);
+    }
+
+    @Test
+    void tooManyAtSameTimestamp() {
+        Service s = new Service(3);
+        for (int i = 0; i < 5; i++) {
+            s.events.add(new Event(5, "t", "x" + i));
+        }
+        s.events.add(new Event(6, "t", "after"));
+        EventIterator it = EventIterator.paged(SearchCursor.of("", 0, 10), s);
+        List<Event> all = new ArrayList<>();
+        // the events that don't fit in a page cannot be fetched
+        EventSearchException e = assertThrows(EventSearchException.class, () -> it.forEachRemaining(all::add));
+        assertTrue(e.getCause() instanceof CothorityCommunicationException);
+        assertEquals(s.events.subList(0, 3), all);
+
+        // the caller can skip them and go on after the timestamp
+        SearchCursor c = it.getCursor();
+        assertEquals(5, c.getFrom());
+        EventIterator.paged(SearchCursor.of(c.getTopic(), c.getFrom() + 1, c.getTo()), s).forEachRemaining(all::add);
+        assertEquals(s.events.get(5), all.get(all.size() - 1));
+    }
+
+    @Test
+    void failure() {
+        CothorityCommunicationException cause = new CothorityCommunicationException("no reply");
+        EventIterator it = EventIterator.paged(SearchCursor.of("", 0, 10), (topic, from, to) -> {
+            CompletableFuture<SearchResponse> f = new CompletableFuture<>();
+            f.completeExceptionally(cause);
+            return f;
+        });
+        EventSearchException e = assertThrows(EventSearchException.class, it::hasNext);
+        assertSame(cause, e.getCause());
+        assertFalse(it.getCursor().isDone());
+    }
+
+    @Test
+    void resume() {
+        Service s = new Service(4);
+        for (int i = 1; i <= 30; i++) {
+            s.events.add(new Event(i / 3, "t", "event " + i));
+        }
+        EventIterator it = EventIterator.paged(SearchCursor.of("", -1, 100), s);
+        List<Event> all = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            all.add(it.next());
+        }
+        SearchCursor cursor = it.getCursor();
+        assertFalse(cursor.isDone());
+        EventIterator.paged(cursor, s).forEachRemaining(all::add);
+        assertEquals(s.events, all);
+    }
+
+    @Test
+    void cursorBytes() throws Exception {
+        Service s = new Service(4);
+        for (int i = 1; i <= 30; i++) {
+            s.events.add(new Event(i / 3, "t", "event " + i));
+        }
+        EventIterator it = EventIterator.paged(SearchCursor.of("t", -1, 100), s);
+        List<Event> all = new ArrayList<>();
+        for (int i = 0; i < 14; i++) {
+            all.add(it.next());
+        }
+        SearchCursor cursor = SearchCursor.fromBytes(it.getCursor().toBytes());
+        assertEquals("t", cursor.getTopic());
+        assertEquals(it.getCursor().getSeen(), cursor.getSeen());
+        EventIterator.paged(cursor, s).forEachRemaining(all::add);
+        assertEquals(s.events, all);
+
+        assertThrows(CothorityException.class, () -> SearchCursor.fromBytes(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void sharded() {
+        Service s = new Service(7);
+        for (int i = 1; i <= 200; i++) {
+            s.events.add(new Event(i * 5, "t", "event " + i));
+        }
+        // the events at 125, 250, ... lie on the boundaries of the shards
+        EventIterator it = EventIterator.sharded(SearchCursor.of("", 0, 1001), 8, 3, s);
+        assertTrue(it.hasNext());
+        // the first shards are requested before the first one is consumed
+        assertEquals(3, s.requests.stream().filter(r -> r[0] % 125 == 0).count());
+        assertEquals(0, s.requests.get(0)[0]);
+        assertEquals(125, s.requests.get(0)[1]);
+        assertEquals(125, s.requests.get(1)[0]);
+
+        List<Event> all = new ArrayList<>();
+        while (it.hasNext()) {
+            all.add(it.next());
+            if (all.size() == 50) {
+                // resuming from the middle gives the rest
+                List<Event> rest = new ArrayList<>(all);
+                EventIterator.sharded(it.getCursor(), 4, 2, s).forEachRemaining(rest::add);
+                assertEquals(s.events, rest);
+            }
+        }
+        assertEquals(s.events, all);
+        assertTrue(it.getCursor().isDone());
+        assertEquals(1001, it.getCursor().getTo());
+
+        assertThrows(IllegalArgumentException.class, () -> EventIterator.sharded(SearchCursor.of("", 0, 0), 2, 2, s));
+    }
+
+    @Test
+    void metrics() {
+        Service s = new Service(5);
+        for (int i = 1; i <= 12; i++) {
+            s.events.add(new Event(i, "t", "event " + i));
+        }
+        List<Integer> pages = new ArrayList<>();
+        EventIterator it = EventIterator.paged(SearchCursor.of("", 0, 100), s);
+        it.getMetrics().setPageListener((events, latency, truncated) -> pages.add(events));
+        it.forEachRemaining(e -> {
+        });
+        // the pages start at 0, 5 and 9
+        assertEquals(3, it.getMetrics().getPages());
+        assertEquals(14, it.getMetrics().getEvents());
+        assertEquals(Arrays.asList(5, 5, 4), pages);
+        assertTrue(it.getMetrics().getPercentileNanos(99) >= 0);
+        assertTrue(it.getMetrics().getMaxNanos() >= it.getMetrics().getAverageNanos());
+    }
+
+    @Test
+    void equality() {
+        assertEquals(new Event(1, "a", "b"), new Event(1, "a", "b"));
+        assertEquals(new Event(1, "a", "b").hashCode(), new Event(1, "a", "b").hashCode());
+        assertNotEquals(new Event(1, "a", "b"), new Event(2, "a", "b"));
+        assertNotEquals(new Event(1, "a", "b"), new Event(1, "a", "c"));
+    }
+}
@@ -0,0 +1,104 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.omniledger.darc.DarcId;
+import ch.epfl.dedis.lib.omniledger.darc.IdentityEd25519;
+import ch.epfl.dedis.lib.omniledger.darc.Signer;
+import ch.epfl.dedis.lib.omniledger.darc.SignerEd25519;
+import ch.epfl.dedis.proto.TransactionProto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientTransactionBuilderTest {
+    private InstanceId instId;
+
+    @BeforeEach
+    void init() throws Exception {
+        instId = new InstanceId(new DarcId(new byte[32]), new SubId(new byte[32]));
+    }
+
+    @Test
+    void build() throws Exception {
+        SignerEd25519 admin = new SignerEd25519();
+        List<Signer> signers = Arrays.asList(admin, new SignerEd25519());
+        ClientTransactionBuilder builder = new ClientTransactionBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.invoke(instId, new Invoke("eventlog", args(i)));
+        }
+        builder.delete(instId, new Delete());
+        assertEquals(101, builder.size());
+
+        ClientTransactionBuilder.Result result = builder.build(signers, "event");
+        List<Instruction> instrs = result.getTransaction().getInstructions();
+        assertEquals(101, instrs.size());
+        assertEquals(101, result.getInstanceIds().size());
+        IdentityEd25519 identity = new IdentityEd25519(admin);
+        for (int i = 0; i < instrs.size(); i++) {
+            Instruction instr = instrs.get(i);
+            TransactionProto.Instruction proto = instr.toProto();
+            assertEquals(i, proto.getIndex());
+            assertEquals(instrs.size(), proto.getLength());
+            assertEquals(instrs.get(0).toProto().getNonce(), proto.getNonce());
+            assertEquals(2, proto.getSignaturesCount());
+            assertTrue(identity.verify(instr.toDarcRequest().hash(),
+                    proto.getSignatures(0).getSignature().toByteArray()));
+            assertEquals(instr.deriveId("event"), result.getInstanceIds().get(i));
+        }
+        assertEquals("delete", instrs.get(100).action());
+    }
+
+    @Test
+    void sameAsSequential() throws Exception {
+        List<Signer> signers = Collections.singletonList(new SignerEd25519());
+        ClientTransactionBuilder builder = new ClientTransactionBuilder(new ForkJoinPool(4));
+        for (int i = 0; i < 50; i++) {
+            builder.spawn(instId, new Spawn("eventlog", args(i)));
+        }
+        List<Instruction> instrs = builder.build(signers, "event").getTransaction().getInstructions();
+
+        byte[] nonce = instrs.get(0).toProto().getNonce().toByteArray();
+        for (int i = 0; i < instrs.size(); i++) {
+            Instruction sequential = new Instruction(instId, nonce, i, instrs.size(), new Spawn("eventlog", args(i)));
+            sequential.signBy(signers);
+            assertArrayEquals(sequential.hash(), instrs.get(i).hash());
+            assertArrayEquals(sequential.toDarcRequest().hash(), instrs.get(i).toDarcRequest().hash());
+        }
+    }
+
+    @Test
+    void cachedHash() {
+        Instruction instr = new Instruction(instId, new byte[32], 0, 1, new Invoke("eventlog", args(1)));
+        byte[] hash = instr.hash();
+        hash[0] ^= 1;
+        assertFalse(Arrays.equals(hash, instr.hash()));
+        assertArrayEquals(instr.hash(), new Instruction(instId, new byte[32], 0, 1,
+                new Invoke("eventlog", args(1))).hash());
+        assertFalse(Arrays.equals(instr.hash(), new Instruction(instId, new byte[32], 1, 2,
+                new Invoke("eventlog", args(1))).hash()));
+    }
+
+    @Test
+    void deriveIdBeforeHash() throws Exception {
+        Instruction hashed = new Instruction(instId, new byte[32], 0, 1, new Invoke("eventlog", args(0)));
+        Instruction fresh = new Instruction(instId, new byte[32], 0, 1, new Invoke("eventlog", args(0)));
+        hashed.setSignatures(Collections.emptyList());
+        fresh.setSignatures(Collections.emptyList());
+        hashed.hash();
+        // the hash of fresh is calculated while deriving the id
+        assertEquals(hashed.deriveId("event"), fresh.deriveId("event"));
+        assertArrayEquals(hashed.hash(), fresh.hash());
+    }
+
+    private static List<Argument> args(int i) {
+        List<Argument> args = new ArrayList<>();
+        args.add(new Argument("event", ("event " + i).getBytes()));
+        return args;
+    }
+}
@@ -0,0 +1,95 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ch.epfl.dedis.lib.omniledger.TestProofs.id;
+import static ch.epfl.dedis.lib.omniledger.TestProofs.proof;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InclusionWatcherTest {
+    private final AtomicInteger latest = new AtomicInteger();
+    private final Set<InstanceId> stored = ConcurrentHashMap.newKeySet();
+    private final Map<InstanceId, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final Set<InstanceId> broken = ConcurrentHashMap.newKeySet();
+    private InclusionWatcher watcher;
+
+    @BeforeEach
+    void init() {
+        watcher = new InclusionWatcher(id -> {
+            requests.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+            if (broken.contains(id)) {
+                throw new IllegalStateException("broken prover");
+            }
+            try {
+                return CompletableFuture.completedFuture(new Proof(proof(id, stored.contains(id), latest.get()).buildPartial()));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, Duration.ofMillis(40));
+    }
+
+    @Test
+    void alreadyStored() throws Exception {
+        stored.add(id(1));
+        Proof p = watcher.watch(id(1), Proof::matches, 5).get(1, TimeUnit.SECONDS);
+        assertTrue(p.matches());
+        assertEquals(0, watcher.pending());
+    }
+
+    @Test
+    void probesOnNewBlock() throws Exception {
+        CompletableFuture<Proof> p = watcher.watch(id(1), Proof::matches, 5);
+        Thread.sleep(100);
+        // the instance is only asked for once as long as no new block is created.
+        assertEquals(1, requests.get(id(1)).get());
+        assertFalse(p.isDone());
+
+        stored.add(id(1));
+        latest.incrementAndGet();
+        assertTrue(p.get(1, TimeUnit.SECONDS).matches());
+        assertEquals(2, requests.get(id(1)).get());
+    }
+
+    @Test
+    void givesUpAfterMaxBlocks() throws Exception {
+        CompletableFuture<Proof> p = watcher.watch(id(1), Proof::matches, 2);
+        Thread.sleep(50);
+        latest.addAndGet(2);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> p.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof CothorityCommunicationException);
+    }
+
+    @Test
+    void givesUpWithoutBlocks() throws Exception {
+        CompletableFuture<Proof> p = watcher.watch(id(1), Proof::matches, 2);
+        // no block is created, so the watch gives up after 3 block intervals.
+        ExecutionException e = assertThrows(ExecutionException.class, () -> p.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof CothorityCommunicationException);
+    }
+
+    @Test
+    void unexpectedError() throws Exception {
+        // the prover throws instead of returning a failed future
+        broken.add(id(1));
+        CompletableFuture<Proof> p = watcher.watch(id(1), Proof::matches, 5);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> p.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof CothorityCommunicationException);
+        assertTrue(e.getCause().getMessage().contains("broken prover"));
+        assertEquals(0, watcher.pending());
+
+        // the watcher is not stuck and serves the next watches
+        stored.add(id(2));
+        assertTrue(watcher.watch(id(2), Proof::matches, 5).get(1, TimeUnit.SECONDS).matches());
+    }
+}
@@ -0,0 +1,65 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static ch.epfl.dedis.lib.omniledger.TestProofs.id;
+import static ch.epfl.dedis.lib.omniledger.TestProofs.proof;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProofCacheTest {
+    @Test
+    void sameBlock() throws Exception {
+        ProofCache c = new ProofCache(10, Duration.ofHours(1));
+        Proof p = new Proof(proof(id(1), true, 2).buildPartial());
+        c.put(id(1), p);
+        assertSame(p, c.get(id(1)));
+        assertNull(c.get(id(2)));
+        assertEquals(2, c.getLatestIndex());
+    }
+
+    @Test
+    void newerBlockInvalidates() throws Exception {
+        ProofCache c = new ProofCache(10, Duration.ofHours(1));
+        c.put(id(1), new Proof(proof(id(1), true, 2).buildPartial()));
+        c.put(id(2), new Proof(proof(id(2), true, 3).buildPartial()));
+        assertNull(c.get(id(1)));
+        assertNotNull(c.get(id(2)));
+
+        // a proof from an older block is not stored.
+        c.put(id(1), new Proof(proof(id(1), true, 2).buildPartial()));
+        assertNull(c.get(id(1)));
+
+        c.advance(4);
+        assertNull(c.get(id(2)));
+    }
+
+    @Test
+    void absenceIsNotStored() throws Exception {
+        ProofCache c = new ProofCache(10, Duration.ofHours(1));
+        c.put(id(1), new Proof(proof(id(1), false, 2).buildPartial()));
+        assertNull(c.get(id(1)));
+    }
+
+    @Test
+    void leastRecentlyUsed() throws Exception {
+        ProofCache c = new ProofCache(2, Duration.ofHours(1));
+        c.put(id(1), new Proof(proof(id(1), true, 2).buildPartial()));
+        c.put(id(2), new Proof(proof(id(2), true, 2).buildPartial()));
+        assertNotNull(c.get(id(1)));
+        c.put(id(3), new Proof(proof(id(3), true, 2).buildPartial()));
+        assertNotNull(c.get(id(1)));
+        assertNull(c.get(id(2)));
+        assertNotNull(c.get(id(3)));
+    }
+
+    @Test
+    void expires() throws Exception {
+        ProofCache c = new ProofCache(10, Duration.ofMillis(20));
+        c.put(id(1), new Proof(proof(id(1), true, 2).buildPartial()));
+        assertNotNull(c.get(id(1)));
+        Thread.sleep(40);
+        assertNull(c.get(id(1)));
+    }
+}
@@ -0,0 +1,106 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.skipchain.TestChain;
+import ch.epfl.dedis.proto.OmniLedgerProto;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import static ch.epfl.dedis.lib.omniledger.TestProofs.genesis;
+import static ch.epfl.dedis.lib.omniledger.TestProofs.id;
+import static ch.epfl.dedis.lib.omniledger.TestProofs.proof;
+import static ch.epfl.dedis.lib.omniledger.TestProofs.signed;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProofTest {
+    @Test
+    void verifyPresence() throws Exception {
+        Proof p = new Proof(signed(proof(id(1), true, 3, "value".getBytes(), "contract".getBytes()), 3).buildPartial());
+        assertTrue(p.matches());
+        assertTrue(p.verify(genesis));
+        assertEquals("contract", new String(p.getValues().get(1)));
+        assertEquals(3, p.getLatest().getIndex());
+        // the second time the interior nodes and the links come from the memo.
+        assertTrue(new Proof(signed(proof(id(1), true, 3, "value".getBytes(), "contract".getBytes()), 3)
+                .buildPartial()).verify(genesis));
+    }
+
+    @Test
+    void verifyAbsence() throws Exception {
+        Proof p = new Proof(signed(proof(id(2), false, 3), 3).buildPartial());
+        assertFalse(p.matches());
+        assertTrue(p.verify(genesis));
+    }
+
+    @Test
+    void changedValue() throws Exception {
+        OmniLedgerProto.Proof.Builder b = signed(proof(id(1), true, 3, "value".getBytes()), 3);
+        OmniLedgerProto.CollectionProof.Builder cp = b.getInclusionProofBuilder();
+        int last = cp.getStepsCount() - 1;
+        OmniLedgerProto.CollectionProof.Step.Builder step = cp.getStepsBuilder(last);
+        if (step.getLeft().getKey().equals(id(1).toByteString())) {
+            step.getLeftBuilder().setValues(0, ByteString.copyFromUtf8("forged"));
+        } else {
+            step.getRightBuilder().setValues(0, ByteString.copyFromUtf8("forged"));
+        }
+        Proof p = new Proof(b.buildPartial());
+        assertTrue(p.matches());
+        assertFalse(p.verify(genesis));
+    }
+
+    @Test
+    void changedRoot() throws Exception {
+        OmniLedgerProto.Proof.Builder b = signed(proof(id(1), true, 3, "value".getBytes()), 3);
+        b.getInclusionProofBuilder().getRootBuilder().getChildrenBuilder().setLeft(ByteString.copyFrom(new byte[32]));
+        assertFalse(new Proof(b.buildPartial()).verify(genesis));
+    }
+
+    @Test
+    void wrongBlock() throws Exception {
+        OmniLedgerProto.Proof.Builder b = proof(id(1), true, 3, "value".getBytes());
+        b.setLatest(TestProofs.block(3, ByteString.copyFromUtf8("another root")));
+        assertFalse(new Proof(signed(b, 3).buildPartial()).verify(genesis));
+    }
+
+    @Test
+    void blockWithRootLabel() throws Exception {
+        OmniLedgerProto.Proof.Builder b = proof(id(1), true, 3, "value".getBytes());
+        b.setLatest(TestProofs.block(3, b.getInclusionProof().getRoot().getLabel()));
+        assertTrue(new Proof(signed(b, 3).buildPartial()).verify(genesis));
+
+        b.setLatest(TestProofs.block(3, ByteString.copyFrom(new byte[32])));
+        assertFalse(new Proof(signed(b, 3).buildPartial()).verify(genesis));
+    }
+
+    @Test
+    void unsignedBlock() throws Exception {
+        // two of four nodes are not enough for a collective signature
+        assertFalse(new Proof(signed(proof(id(1), true, 4, "value".getBytes()), 2).buildPartial()).verify(genesis));
+
+        // the latest block has been changed after it has been signed
+        OmniLedgerProto.Proof.Builder b = signed(proof(id(1), true, 5, "value".getBytes()), 3);
+        b.getLatestBuilder().setIndex(12);
+        b.getLatestBuilder().setData(b.getLatest().getData().concat(ByteString.copyFromUtf8("forged")));
+        assertFalse(new Proof(b.buildPartial()).verify(genesis));
+
+        // without links, nothing ties the latest block to the genesis block
+        b = signed(proof(id(1), true, 6, "value".getBytes()), 3).clearLinks();
+        assertFalse(new Proof(b.buildPartial()).verify(genesis));
+    }
+
+    @Test
+    void otherSkipchain() throws Exception {
+        Proof p = new Proof(signed(proof(id(1), true, 3, "value".getBytes()), 3).buildPartial());
+        SkipBlock other = TestChain.block(0, null, TestChain.roster(TestChain.keys(4), 2));
+        assertFalse(p.verify(other));
+        assertTrue(p.verify(genesis));
+    }
+
+    @Test
+    void dataHeader() throws Exception {
+        DataHeader h = new DataHeader(new Proof(proof(id(1), true, 3).buildPartial()).getLatest());
+        assertEquals(0, h.getCollectionRoot().length);
+        assertEquals(32, h.getStateChangesHash().length);
+        assertEquals(1234567890, h.getTimestamp());
+    }
+}
@@ -0,0 +1,128 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.crypto.KeyPair;
+import ch.epfl.dedis.lib.skipchain.TestChain;
+import ch.epfl.dedis.proto.OmniLedgerProto;
+import ch.epfl.dedis.proto.RosterProto;
+import ch.epfl.dedis.proto.SkipBlockProto;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds proofs like the omniledger service does, for the tests that don't run a conode.
+ */
+class TestProofs {
+    private static final ByteString zero = ByteString.copyFrom(new byte[32]);
+    static final List<KeyPair> keys = TestChain.keys(4);
+    static final RosterProto.Roster roster = TestChain.roster(keys, 1);
+    // the genesis block of the skipchain the signed proofs belong to
+    static final SkipBlock genesis = TestChain.block(0, null, roster);
+
+    static InstanceId id(int i) throws Exception {
+        byte[] buf = new byte[InstanceId.length];
+        buf[0] = (byte) i;
+        buf[1] = 1;
+        return new InstanceId(buf);
+    }
+
+    /**
+     * Creates a proof with a collection of depth 2 holding the key, or not holding it if matches is false.
+     */
+    static OmniLedgerProto.Proof.Builder proof(InstanceId id, boolean matches, int index, byte[]... values) throws Exception {
+        ByteString key = id.toByteString();
+        byte[] path = MessageDigest.getInstance("SHA-256").digest(key.toByteArray());
+
+        OmniLedgerProto.CollectionProof.Node.Builder end = OmniLedgerProto.CollectionProof.Node.newBuilder();
+        if (matches) {
+            end.setKey(key);
+            for (byte[] v : values) {
+                end.addValues(ByteString.copyFrom(v));
+            }
+        } else {
+            end.setKey(ByteString.EMPTY);
+        }
+        OmniLedgerProto.CollectionProof.Node cursor = leaf(end);
+
+        List<OmniLedgerProto.CollectionProof.Step> steps = new ArrayList<>();
+        for (int depth = 1; depth >= 0; depth--) {
+            OmniLedgerProto.CollectionProof.Node other = leaf(OmniLedgerProto.CollectionProof.Node.newBuilder()
+                    .setKey(ByteString.copyFromUtf8("other" + depth)));
+            boolean right = (path[0] & (1 << (7 - depth))) != 0;
+            OmniLedgerProto.CollectionProof.Node left = right ? other : cursor;
+            OmniLedgerProto.CollectionProof.Node r = right ? cursor : other;
+            steps.add(0, OmniLedgerProto.CollectionProof.Step.newBuilder().setLeft(left).setRight(r).build());
+            OmniLedgerProto.CollectionProof.Node.Children children = OmniLedgerProto.CollectionProof.Node.Children
+                    .newBuilder().setLeft(left.getLabel()).setRight(r.getLabel()).build();
+            cursor = OmniLedgerProto.CollectionProof.Node.newBuilder().setChildren(children)
+                    .setLabel(label(false, ByteString.EMPTY, new ArrayList<>(), left.getLabel(), r.getLabel()))
+                    .build();
+        }
+
+        OmniLedgerProto.CollectionProof.Builder cp = OmniLedgerProto.CollectionProof.newBuilder()
+                .setKey(key).setRoot(cursor).addAllSteps(steps);
+        return OmniLedgerProto.Proof.newBuilder().setInclusionProof(cp).setLatest(block(index, cursor.getKey()));
+    }
+
+    /**
+     * Makes the latest block of the proof follow the genesis block, with a forward link from the genesis block
+     * signed by the given number of nodes, like the service returns it.
+     */
+    static OmniLedgerProto.Proof.Builder signed(OmniLedgerProto.Proof.Builder b, int signers) throws Exception {
+        SkipBlockProto.SkipBlock.Builder latest = b.getLatest().toBuilder()
+                .setGenesis(genesis.getProto().getHash()).setRoster(roster).setHash(ByteString.EMPTY);
+        latest.setHash(ByteString.copyFrom(new SkipBlock(latest.buildPartial()).calculateHash()));
+        SkipBlock linked = TestChain.link(genesis, new SkipBlock(latest.buildPartial()), keys, signers);
+        return b.setLatest(latest.buildPartial()).clearLinks()
+                .addLinks(SkipBlockProto.ForwardLink.newBuilder().setFrom(ByteString.EMPTY)
+                        .setTo(genesis.getProto().getHash()).setNewRoster(roster).buildPartial())
+                .addLinks(linked.getProto().getForward(0));
+    }
+
+    /**
+     * Creates a block with a data header holding the given collection root. The skipchain-ID is the same for all
+     * blocks with an index bigger than 0.
+     */
+    static SkipBlockProto.SkipBlock block(int index, ByteString root) throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        buf.write(new byte[16]);
+        CodedOutputStream out = CodedOutputStream.newInstance(buf);
+        out.writeBytes(1, root);
+        out.writeBytes(2, zero);
+        // the index is not part of the hash of a block, so it goes into the state changes hash to give every
+        // block another id
+        byte[] stateChanges = new byte[32];
+        stateChanges[0] = (byte) index;
+        out.writeBytes(3, ByteString.copyFrom(stateChanges));
+        out.writeSInt64(4, 1234567890);
+        out.flush();
+        // the index is zigzag-encoded.
+        return SkipBlockProto.SkipBlock.newBuilder().setIndex(index * 2).setData(ByteString.copyFrom(buf.toByteArray()))
+                .setGenesis(zero).setHash(zero).buildPartial();
+    }
+
+    private static OmniLedgerProto.CollectionProof.Node leaf(OmniLedgerProto.CollectionProof.Node.Builder n) throws Exception {
+        n.setChildren(OmniLedgerProto.CollectionProof.Node.Children.newBuilder().setLeft(zero).setRight(zero));
+        return n.setLabel(label(true, n.getKey(), n.getValuesList(), zero, zero)).build();
+    }
+
+    private static ByteString label(boolean leaf, ByteString key, List<ByteString> values, ByteString left,
+                                    ByteString right) throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        CodedOutputStream out = CodedOutputStream.newInstance(buf);
+        out.writeBool(1, leaf);
+        out.writeBytes(2, key);
+        for (ByteString v : values) {
+            out.writeBytes(3, v);
+        }
+        out.writeBytes(4, left);
+        out.writeBytes(5, right);
+        out.flush();
+        return ByteString.copyFrom(MessageDigest.getInstance("SHA-256").digest(buf.toByteArray()));
+    }
+}
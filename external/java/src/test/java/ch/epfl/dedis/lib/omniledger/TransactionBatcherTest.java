@@ -0,0 +1,180 @@
+package ch.epfl.dedis.lib.omniledger;
+
+import ch.epfl.dedis.lib.exception.CothorityCommunicationException;
+import ch.epfl.dedis.lib.exception.CothorityUnavailableException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionBatcherTest {
+    private List<ClientTransaction> sent;
+    private List<InstanceId> watched;
+
+    @BeforeEach
+    void init() {
+        sent = new CopyOnWriteArrayList<>();
+        watched = new CopyOnWriteArrayList<>();
+    }
+
+    private TransactionBatcher batcher(int maxInstructions, int maxBytes, Duration maxDelay) {
+        return new TransactionBatcher(ct -> {
+            sent.add(ct);
+            return CompletableFuture.completedFuture(null);
+        }, id -> {
+            watched.add(id);
+            return CompletableFuture.completedFuture(null);
+        }, maxInstructions, maxBytes, maxDelay);
+    }
+
+    private static Instruction instruction(int size) throws Exception {
+        Invoke inv = new Invoke("update", "value", new byte[size]);
+        Instruction instr = new Instruction(id(0), new byte[32], 0, 1, inv);
+        instr.setSignatures(Collections.emptyList());
+        return instr;
+    }
+
+    private static InstanceId id(int i) throws Exception {
+        byte[] buf = new byte[InstanceId.length];
+        buf[0] = (byte) i;
+        return new InstanceId(buf);
+    }
+
+    @Test
+    void flushOnCount() throws Exception {
+        TransactionBatcher b = batcher(3, 1 << 20, Duration.ofHours(1));
+        List<CompletableFuture<InstanceId>> results = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            results.add(b.submit(instruction(10), id(i)));
+        }
+        assertEquals(2, sent.size());
+        assertEquals(3, sent.get(0).getInstructions().size());
+        assertEquals(1, b.getQueueDepth());
+        assertFalse(results.get(6).isDone());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(id(i), results.get(i).get(1, TimeUnit.SECONDS));
+        }
+        // only one instance per batch is watched.
+        assertEquals(2, watched.size());
+
+        b.close();
+        assertEquals(id(6), results.get(6).get(1, TimeUnit.SECONDS));
+        assertEquals(3, b.getBatchesSent());
+        assertEquals(7, b.getInstructionsSent());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> b.submit(instruction(10), id(7)).get());
+        assertTrue(e.getCause() instanceof CothorityCommunicationException);
+    }
+
+    @Test
+    void flushOnBytes() throws Exception {
+        int size = instruction(1000).toProto().getSerializedSize();
+        TransactionBatcher b = batcher(100, 2 * size + size / 2, Duration.ofHours(1));
+        for (int i = 0; i < 3; i++) {
+            b.submit(instruction(1000), id(i));
+        }
+        // the third instruction doesn't fit anymore and starts the next batch.
+        assertEquals(1, sent.size());
+        assertEquals(2, sent.get(0).getInstructions().size());
+        assertEquals(1, b.getQueueDepth());
+
+        b.submit(instruction(10000), id(3));
+        assertEquals(3, sent.size());
+        assertEquals(1, sent.get(2).getInstructions().size());
+        assertEquals(0, b.getQueueDepth());
+    }
+
+    @Test
+    void flushOnDeadline() throws Exception {
+        TransactionBatcher b = batcher(100, 1 << 20, Duration.ofMillis(50));
+        CompletableFuture<TransactionBatcher.BatchStats> stats = new CompletableFuture<>();
+        b.setListener(stats::complete);
+        CompletableFuture<InstanceId> first = b.submit(instruction(10), id(1));
+        CompletableFuture<InstanceId> second = b.submit(instruction(10), id(2));
+        assertEquals(0, sent.size());
+
+        assertEquals(id(1), first.get(1, TimeUnit.SECONDS));
+        assertEquals(id(2), second.get(1, TimeUnit.SECONDS));
+        assertEquals(1, sent.size());
+        TransactionBatcher.BatchStats s = stats.get(1, TimeUnit.SECONDS);
+        assertEquals(2, s.getInstructions());
+        assertTrue(s.isStored());
+        assertEquals(0, s.getQueueDepth());
+    }
+
+    @Test
+    void failureFailsBatch() throws Exception {
+        TransactionBatcher b = new TransactionBatcher(ct -> {
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            f.completeExceptionally(new CothorityCommunicationException("refused"));
+            return f;
+        }, id -> CompletableFuture.completedFuture(null), 2, 1 << 20, Duration.ofHours(1));
+        CompletableFuture<TransactionBatcher.BatchStats> stats = new CompletableFuture<>();
+        b.setListener(stats::complete);
+        CompletableFuture<InstanceId> first = b.submit(instruction(10), id(1));
+        CompletableFuture<InstanceId> second = b.submit(instruction(10), id(2));
+
+        for (CompletableFuture<InstanceId> f : Arrays.asList(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(1, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof CothorityCommunicationException);
+            assertEquals("refused", e.getCause().getCause().getMessage());
+        }
+        assertFalse(stats.get(1, TimeUnit.SECONDS).isStored());
+        assertEquals(0, stats.get(1, TimeUnit.SECONDS).getThroughput());
+    }
+
+    @Test
+    void failedBatchIsSplit() throws Exception {
+        int bad = instruction(13).toProto().getSerializedSize();
+        AtomicBoolean refused = new AtomicBoolean();
+        TransactionBatcher b = new TransactionBatcher(ct -> {
+            sent.add(ct);
+            // the leader accepts the transaction, but it is not stored if one of the instructions is invalid
+            refused.set(ct.getInstructions().stream().anyMatch(i -> i.toProto().getSerializedSize() == bad));
+            return CompletableFuture.completedFuture(null);
+        }, id -> {
+            CompletableFuture<Proof> f = new CompletableFuture<>();
+            if (refused.get()) {
+                f.completeExceptionally(new CothorityCommunicationException("instance " + id + " not stored"));
+            } else {
+                f.complete(null);
+            }
+            return f;
+        }, 3, 1 << 20, Duration.ofHours(1));
+        CompletableFuture<InstanceId> first = b.submit(instruction(10), id(1));
+        CompletableFuture<InstanceId> invalid = b.submit(instruction(13), id(2));
+        CompletableFuture<InstanceId> third = b.submit(instruction(10), id(3));
+
+        assertEquals(id(1), first.get(1, TimeUnit.SECONDS));
+        assertEquals(id(3), third.get(1, TimeUnit.SECONDS));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> invalid.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getMessage().contains(id(2).toString()));
+        // the batch and its three instructions one by one
+        assertEquals(4, sent.size());
+        assertEquals(4, b.getBatchesSent());
+    }
+
+    @Test
+    void unreachableLeaderIsNotRetried() throws Exception {
+        TransactionBatcher b = new TransactionBatcher(ct -> {
+            sent.add(ct);
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            f.completeExceptionally(new CothorityUnavailableException("leader is down"));
+            return f;
+        }, id -> CompletableFuture.completedFuture(null), 2, 1 << 20, Duration.ofHours(1));
+        CompletableFuture<InstanceId> first = b.submit(instruction(10), id(1));
+        b.submit(instruction(10), id(2));
+        assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.SECONDS));
+        assertEquals(1, sent.size());
+    }
+}
@@ -0,0 +1,69 @@
+package ch.epfl.dedis.lib.skipchain;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.crypto.KeyPair;
+import ch.epfl.dedis.lib.exception.CothorityCryptoException;
+import ch.epfl.dedis.proto.RosterProto;
+import ch.epfl.dedis.proto.SkipBlockProto;
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForwardLinkTest {
+    private final List<KeyPair> keys = TestChain.keys(4);
+    private final RosterProto.Roster roster = TestChain.roster(keys, 1);
+
+    @Test
+    void verify() throws Exception {
+        SkipBlock genesis = TestChain.block(0, null, roster);
+        SkipBlock one = TestChain.block(1, genesis, roster);
+        ForwardLink fl = TestChain.link(genesis, one, keys, 3).getForwardLinks().get(0);
+        assertNull(fl.getNewRoster());
+        assertTrue(fl.verify(ForwardLink.publics(roster)));
+
+        // only 2 out of 4 nodes signed
+        fl = TestChain.link(genesis, one, keys, 2).getForwardLinks().get(0);
+        assertFalse(fl.verify(ForwardLink.publics(roster)));
+
+        // signed by another roster
+        fl = TestChain.link(genesis, one, TestChain.keys(4), 4).getForwardLinks().get(0);
+        assertFalse(fl.verify(ForwardLink.publics(roster)));
+    }
+
+    @Test
+    void update() throws Exception {
+        SkipBlock genesis = TestChain.block(0, null, roster);
+        SkipBlock one = TestChain.block(1, genesis, roster);
+        List<KeyPair> newKeys = TestChain.keys(3);
+        SkipBlock two = TestChain.block(2, genesis, TestChain.roster(newKeys, 2));
+        List<SkipBlock> update = Arrays.asList(TestChain.link(genesis, one, keys, 4),
+                TestChain.link(one, two, keys, 3), two);
+        SkipchainRPC.verifyUpdate(genesis.getId(), update);
+
+        // the new roster must be signed by the old one
+        List<SkipBlock> unsigned = Arrays.asList(TestChain.link(genesis, one, keys, 4),
+                TestChain.link(one, two, newKeys, 3), two);
+        assertThrows(CothorityCryptoException.class, () -> SkipchainRPC.verifyUpdate(genesis.getId(), unsigned));
+    }
+
+    @Test
+    void wrongHash() throws Exception {
+        SkipBlock genesis = TestChain.block(0, null, roster);
+        SkipBlock one = TestChain.block(1, genesis, roster);
+        SkipBlock forged = new SkipBlock(one.getProto().toBuilder()
+                .setData(ByteString.copyFromUtf8("forged")).build());
+        List<SkipBlock> update = Arrays.asList(TestChain.link(genesis, one, keys, 4), forged);
+        assertThrows(CothorityCryptoException.class, () -> SkipchainRPC.verifyUpdate(genesis.getId(), update));
+        assertThrows(CothorityCryptoException.class, () ->
+                SkipchainRPC.verifyUpdate(one.getId(), Arrays.asList(genesis, one)));
+
+        // missing link
+        SkipBlockProto.SkipBlock noLink = genesis.getProto();
+        assertThrows(CothorityCryptoException.class, () ->
+                SkipchainRPC.verifyUpdate(genesis.getId(), Arrays.asList(new SkipBlock(noLink), one)));
+    }
+}
@@ -0,0 +1,97 @@
+package ch.epfl.dedis.lib.skipchain;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.crypto.KeyPair;
+import ch.epfl.dedis.proto.RosterProto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkipBlockStoreTest {
+    private Path dir;
+    private List<KeyPair> keys;
+    private RosterProto.Roster roster;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dir = Files.createTempDirectory("blocks");
+        keys = TestChain.keys(4);
+        roster = TestChain.roster(keys, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    @Test
+    void lookup() throws Exception {
+        SkipBlockStore store = SkipBlockStore.inMemory();
+        SkipBlock genesis = TestChain.block(0, null, roster);
+        SkipBlock one = TestChain.block(1, genesis, roster);
+        store.put(genesis);
+        store.put(one);
+
+        assertEquals(2, store.size());
+        assertArrayEquals(one.toByteArray(), store.get(one.getId()).toByteArray());
+        assertArrayEquals(genesis.toByteArray(), store.get(genesis.getId(), 0).toByteArray());
+        assertEquals(1, store.getLatest(genesis.getId()).getIndex());
+        assertNull(store.get(genesis.getId(), 2));
+        assertNull(store.getLatest(one.getId()));
+    }
+
+    @Test
+    void newestVersion() throws Exception {
+        SkipBlockStore store = SkipBlockStore.inMemory();
+        SkipBlock genesis = TestChain.block(0, null, roster);
+        SkipBlock one = TestChain.block(1, genesis, roster);
+        store.put(genesis);
+        store.put(TestChain.link(genesis, one, keys, 4));
+        store.put(genesis);
+
+        assertEquals(1, store.size());
+        assertEquals(1, store.get(genesis.getId()).getForwardLinks().size());
+    }
+
+    @Test
+    void reopen() throws Exception {
+        SkipBlock genesis = TestChain.block(0, null, roster);
+        SkipBlock prev = genesis;
+        // small segments, so that the blocks are spread over more than one file.
+        try (SkipBlockStore store = SkipBlockStore.open(dir, 1024)) {
+            store.put(genesis);
+            for (int i = 1; i < 10; i++) {
+                SkipBlock sb = TestChain.block(i, genesis, roster);
+                store.put(TestChain.link(prev, sb, keys, 3));
+                store.put(sb);
+                prev = sb;
+            }
+        }
+        assertTrue(dir.toFile().listFiles().length > 1);
+
+        try (SkipBlockStore store = SkipBlockStore.open(dir, 1024)) {
+            assertEquals(10, store.size());
+            assertArrayEquals(prev.toByteArray(), store.getLatest(genesis.getId()).toByteArray());
+            assertEquals(1, store.get(genesis.getId(), 4).getForwardLinks().size());
+
+            SkipBlock sb = TestChain.block(10, genesis, roster);
+            store.put(sb);
+        }
+        try (SkipBlockStore store = SkipBlockStore.open(dir, 1024)) {
+            assertEquals(10, store.getLatest(genesis.getId()).getIndex());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package ch.epfl.dedis.lib.skipchain;
+
+import ch.epfl.dedis.lib.SkipBlock;
+import ch.epfl.dedis.lib.crypto.Ed25519Scalar;
+import ch.epfl.dedis.lib.crypto.KeyPair;
+import ch.epfl.dedis.lib.crypto.Point;
+import ch.epfl.dedis.proto.RosterProto;
+import ch.epfl.dedis.proto.ServerIdentityProto;
+import ch.epfl.dedis.proto.SkipBlockProto;
+import com.google.protobuf.ByteString;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds skipblocks with forward links signed the same way as the conodes do it.
+ */
+public final class TestChain {
+    // the order of the base point of ed25519
+    private static final BigInteger order =
+            BigInteger.ONE.shiftLeft(252).add(new BigInteger("27742317777372353535851937790883648493"));
+
+    public static List<KeyPair> keys(int n) {
+        List<KeyPair> ret = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            ret.add(new KeyPair());
+        }
+        return ret;
+    }
+
+    public static RosterProto.Roster roster(List<KeyPair> keys, int id) {
+        RosterProto.Roster.Builder r = RosterProto.Roster.newBuilder();
+        byte[] rid = new byte[16];
+        rid[0] = (byte) id;
+        r.setId(ByteString.copyFrom(rid));
+        Point aggregate = null;
+        for (int i = 0; i < keys.size(); i++) {
+            Point pub = keys.get(i).point;
+            aggregate = aggregate == null ? pub : aggregate.add(pub);
+            r.addList(ServerIdentityProto.ServerIdentity.newBuilder()
+                    .setPublic(pub.toProto())
+                    .setId(ByteString.copyFrom(new byte[16]))
+                    .setAddress("tcp://127.0.0.1:" + (7002 + 2 * i))
+                    .setDescription("node " + i));
+        }
+        r.setAggregate(aggregate.toProto());
+        return r.build();
+    }
+
+    /**
+     * @return a block without forward links, with the correct hash
+     */
+    public static SkipBlock block(int index, SkipBlock genesis, RosterProto.Roster roster) {
+        SkipBlockProto.SkipBlock.Builder b = SkipBlockProto.SkipBlock.newBuilder()
+                .setIndex(2 * index)
+                .setHeight(2)
+                .setMaxHeight(2)
+                .setBaseHeight(2)
+                .setGenesis(genesis == null ? ByteString.EMPTY : genesis.getProto().getHash())
+                .setData(ByteString.copyFromUtf8("block " + index))
+                .setRoster(roster)
+                .setHash(ByteString.EMPTY);
+        b.setHash(ByteString.copyFrom(new SkipBlock(b.buildPartial()).calculateHash()));
+        return new SkipBlock(b.build());
+    }
+
+    /**
+     * @return the block from with a forward link to the block to, signed by the first signers of keys.
+     */
+    public static SkipBlock link(SkipBlock from, SkipBlock to, List<KeyPair> keys, int signers) throws Exception {
+        SkipBlockProto.ForwardLink.Builder fl = SkipBlockProto.ForwardLink.newBuilder()
+                .setFrom(from.getProto().getHash())
+                .setTo(to.getProto().getHash());
+        RosterProto.Roster newRoster = to.getProto().getRoster();
+        if (!newRoster.getId().equals(from.getProto().getRoster().getId())) {
+            fl.setNewRoster(newRoster);
+        }
+        fl.setSignature(SkipBlockProto.ByzcoinSig.newBuilder().setMsg(ByteString.EMPTY).setSig(ByteString.EMPTY));
+        byte[] msg = new ForwardLink(fl.buildPartial()).hash();
+        fl.setSignature(SkipBlockProto.ByzcoinSig.newBuilder()
+                .setMsg(ByteString.copyFrom(msg))
+                .setSig(ByteString.copyFrom(sign(keys, signers, msg))));
+        return new SkipBlock(from.getProto().toBuilder().addForward(fl).build());
+    }
+
+    /**
+     * @return a collective signature of the first signers of keys on msg
+     */
+    public static byte[] sign(List<KeyPair> keys, int signers, byte[] msg) throws Exception {
+        byte[] mask = new byte[(keys.size() + 7) / 8];
+        Point commitment = null;
+        Point aggregate = null;
+        BigInteger secrets = BigInteger.ZERO;
+        BigInteger privates = BigInteger.ZERO;
+        for (int i = 0; i < signers; i++) {
+            KeyPair v = new KeyPair();
+            commitment = commitment == null ? v.point : commitment.add(v.point);
+            aggregate = aggregate == null ? keys.get(i).point : aggregate.add(keys.get(i).point);
+            secrets = secrets.add(scalar(v.scalar.toBytes()));
+            privates = privates.add(scalar(keys.get(i).scalar.toBytes()));
+            mask[i >> 3] |= 1 << (i & 7);
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-512");
+        digest.update(commitment.toBytes());
+        digest.update(aggregate.toBytes());
+        digest.update(msg);
+        BigInteger k = scalar(new Ed25519Scalar(digest.digest()).toBytes());
+        BigInteger r = secrets.add(k.multiply(privates)).mod(order);
+
+        byte[] sig = new byte[64 + mask.length];
+        System.arraycopy(commitment.toBytes(), 0, sig, 0, 32);
+        System.arraycopy(littleEndian(r), 0, sig, 32, 32);
+        System.arraycopy(mask, 0, sig, 64, mask.length);
+        return sig;
+    }
+
+    private static BigInteger scalar(byte[] le) {
+        byte[] be = new byte[le.length];
+        for (int i = 0; i < le.length; i++) {
+            be[i] = le[le.length - 1 - i];
+        }
+        return new BigInteger(1, be);
+    }
+
+    private static byte[] littleEndian(BigInteger v) {
+        byte[] be = v.toByteArray();
+        byte[] le = new byte[32];
+        for (int i = 0; i < be.length && i < 32; i++) {
+            le[i] = be[be.length - 1 - i];
+        }
+        return le;
+    }
+}
@@ -4,10 +4,23 @@ import ch.epfl.dedis.lib.crypto.KeyPair;
 import ch.epfl.dedis.lib.darc.Darc;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
 class DocumentTest {
     @Test
     void getWrite() throws Exception{
         KeyPair kp = new KeyPair();
         WriteRequest doc = new WriteRequest("This is a test message", 16, new Darc());
     }
+
+    @Test
+    void writeRequestHasData() throws Exception {
+        Document doc = new Document(new ByteArrayInputStream("This is a test message".getBytes()), 16,
+                new Darc(), new byte[]{});
+        WriteRequest wr = doc.getWriteRequest();
+        assertArrayEquals(doc.getDataEncrypted(), wr.dataEnc);
+        assertArrayEquals(doc.getDataEncrypted(), wr.getData().toByteArray());
+    }
 }
@@ -17,10 +17,13 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -119,6 +122,21 @@ class OnchainSecretsTest {
         assertFalse(doc3.equals(doc));
     }
 
+    @Test
+    void streamDocument() throws Exception {
+        byte[] data = new byte[100000];
+        new Random().nextBytes(data);
+        WriteRequest wr = ocs.publishDocument(new ByteArrayInputStream(data), 16, readerDarc, new byte[]{}, publisher);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ocs.getDocument(wr.id, reader, out);
+        assertArrayEquals(data, out.toByteArray());
+
+        out = new ByteArrayOutputStream();
+        ocs.readDocument(wr.id, reader, out);
+        assertArrayEquals(data, out.toByteArray());
+    }
+
     @Test
     void ephemeralReadDocument() throws Exception{
         WriteRequest write = ocs.publishDocument(doc, publisher);